@@ -7,26 +7,67 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.media.MediaPlayer;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Handler;
 import android.util.DisplayMetrics;
+import android.util.Log;
 
-import java.util.List;
-
+import dimitri_dessus.labymotion.engines.GameSimulation;
 import dimitri_dessus.labymotion.engines.GraphicGameEngine;
 import dimitri_dessus.labymotion.engines.PhysicalGameEngine;
+import dimitri_dessus.labymotion.engines.SoundGameEngine;
+import dimitri_dessus.labymotion.levels.PreparedLevel;
+import dimitri_dessus.labymotion.metrics.Metrics;
 import dimitri_dessus.labymotion.models.Ball;
-import dimitri_dessus.labymotion.models.Bloc;
+import dimitri_dessus.labymotion.models.BallSystem;
+import dimitri_dessus.labymotion.models.BlockStore;
+import dimitri_dessus.labymotion.replay.TraceRecorder;
+import dimitri_dessus.labymotion.sensors.ColorLevels;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class GameActivity extends AppCompatActivity implements SensorEventListener {
 
+    private static final String TAG = "GameActivity";
+
     // Id of dialog
     public static final int VICTORY_DIALOG  = 0;
     public static final int DEFEAT_DIALOG   = 1;
     public static final int WALKING_DIALOG  = 2;
     private double tsWalkingDialog          = 0.0f;
 
+    // Keys of the game state saved when the activity may be destroyed
+    private static final String STATE_GAME              = "game";
+    private static final String STATE_WALKING_DIALOG    = "walking_dialog";
+
+    // Max time sensors may batch samples in their hardware FIFO, in microseconds.
+    // 0 delivers every sample as soon as it is taken.
+    private static final int SENSOR_REPORT_LATENCY = 0;
+
+    // Record every sensor sample in the app files "traces" directory, to replay games with the tools
+    private static final boolean RECORD_TRACE = false;
+
+    // Measure engines and show the measures over the game, dump them with
+    // "adb shell dumpsys activity dimitri_dessus.labymotion/.GameActivity"
+    private static final boolean SHOW_METRICS = false;
+
+    // Show the way to END ahead of the ball
+    private static final boolean SHOW_HINT = false;
+
+    // Let a bot play, for attract mode. Accelerometer only gives the time.
+    private static final boolean AUTO_PLAY = false;
+
+    // Extra balls rolling on empty blocs with the player ball, half its size
+    private static final int EXTRA_BALLS = 0;
+
     // Define screen height ratio
     private static final int SCREEN_HEIGHT_RATION = 143;
 
@@ -34,19 +75,39 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
     private PhysicalGameEngine mEngine  = null;
     private GraphicGameEngine mView     = null;
     private Ball mBall                  = null;
+    private PreparedLevel mLevel        = null;
+    private BlockStore mBlocks          = null;
+
+    // Extra balls and threads moving them, null when there are none
+    private BallSystem mBalls           = null;
+    private ExecutorService mExecutor   = null;
 
     // Sensors
     private SensorManager mSensorManager    = null;
     private Sensor mLuminositySensor        = null;
     private Sensor mMagneticSensor          = null;
 
-    // Sound
-    private MediaPlayer mediaPlayer;
+    // Light and magnetic levels, applied once per batch of events and only when they change
+    private final Handler mHandler          = new Handler();
+    private final ColorLevels mColors       = new ColorLevels();
+    private boolean mLuminosityChanged      = false;
+    private boolean mMagneticChanged        = false;
+
+    // Sounds, decoded once
+    private SoundGameEngine mSounds = null;
+
+    // Trace of the game, null when not recording
+    private TraceRecorder mRecorder = null;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        if(SHOW_METRICS) {
+            Metrics.reset();
+            Metrics.setEnabled(true);
+        }
+
         // Init sensor manager
         mSensorManager      = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
         mLuminositySensor   = mSensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
@@ -55,6 +116,9 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
         // Init graphic game engine
         mView   = new GraphicGameEngine(this);
         mEngine = new PhysicalGameEngine(this);
+        mEngine.setMaxReportLatency(SENSOR_REPORT_LATENCY);
+        mEngine.setAutoPilot(AUTO_PLAY);
+        mSounds = new SoundGameEngine(this);
         setContentView(mView);
 
         // Change here radius according to screen height
@@ -68,9 +132,40 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
         mView.setBall(mBall);
         mEngine.setBall(mBall);
 
-        // Build the labyrinthe
-        List<Bloc> mList = mEngine.buildLabyrinthe();
-        mView.setBlocks(mList);
+        // Start recording before the labyrinth is built
+        if(RECORD_TRACE)
+            startRecording();
+
+        // Build the labyrinthe from the first level, or the saved one. The level is kept in
+        // memory while the activity is created again, and loaded again after a process restart.
+        byte[] state = savedInstanceState != null ? savedInstanceState.getByteArray(STATE_GAME) : null;
+        mLevel = (PreparedLevel) getLastCustomNonConfigurationInstance();
+        if(mLevel != null)
+            mEngine.setLevel(mLevel);
+        else
+            mLevel = mEngine.buildLabyrinthe(Math.max(GameSimulation.getSavedLevel(state), 0));
+        mBlocks = mLevel.getBlocks();
+
+        // Put the ball back where it was
+        if(state != null && !mEngine.restoreState(state))
+            Log.w(TAG, "Saved game can't be restored");
+        if(savedInstanceState != null)
+            tsWalkingDialog = savedInstanceState.getDouble(STATE_WALKING_DIALOG);
+        mView.setLevel(mLevel);
+        mView.setHintVisible(SHOW_HINT);
+
+        // Init extra balls, moved by all cores when there are many of them
+        if(EXTRA_BALLS > 0) {
+            mBalls = new BallSystem(EXTRA_BALLS);
+            int cores = Runtime.getRuntime().availableProcessors();
+            if(EXTRA_BALLS >= BallSystem.PARALLEL_THRESHOLD && cores > 1) {
+                mExecutor = Executors.newFixedThreadPool(cores - 1);
+                mBalls.setExecutor(mExecutor, cores);
+            }
+            spawnBalls();
+            mView.setBalls(mBalls);
+            mEngine.setBalls(mBalls);
+        }
     }
 
     @Override
@@ -79,10 +174,14 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
 
         // Resume the game
         mEngine.resume();
+        mSounds.resume();
+
+        // First samples after the pause set the color levels directly
+        mColors.reset();
 
         // Register listener
-        mSensorManager.registerListener(this, mLuminositySensor, SensorManager.SENSOR_DELAY_NORMAL);
-        mSensorManager.registerListener(this, mMagneticSensor, SensorManager.SENSOR_DELAY_NORMAL);
+        mSensorManager.registerListener(this, mLuminositySensor, SensorManager.SENSOR_DELAY_NORMAL, SENSOR_REPORT_LATENCY);
+        mSensorManager.registerListener(this, mMagneticSensor, SensorManager.SENSOR_DELAY_NORMAL, SENSOR_REPORT_LATENCY);
     }
 
     @Override
@@ -91,9 +190,114 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
 
         // Stop the game
         mEngine.stop();
+        mSounds.pause();
 
         // Unregister the sensor listener
         mSensorManager.unregisterListener(this);
+        mHandler.removeCallbacks(mApplyColors);
+        mLuminosityChanged = false;
+        mMagneticChanged = false;
+
+        // Keep recorded samples if the app is killed while paused
+        if(mRecorder != null) {
+            try {
+                mRecorder.flush();
+            } catch (IOException e) {
+                Log.e(TAG, "Trace recording failed", e);
+            }
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+
+        // Game may still run before onPause on older versions, stop it before taking its state
+        mEngine.stop();
+        outState.putByteArray(STATE_GAME, mEngine.saveState());
+        outState.putDouble(STATE_WALKING_DIALOG, tsWalkingDialog);
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        // Keep the prepared level while the activity is created again
+        return mLevel;
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        writer.print(prefix);
+        writer.println("Metrics" + (Metrics.isEnabled() ? "" : " (disabled)"));
+        for(String line : Metrics.snapshot().toString().split("\n")) {
+            writer.print(prefix);
+            writer.print("  ");
+            writer.println(line);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if(mRecorder != null) {
+            try {
+                mRecorder.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Trace recording failed", e);
+            }
+            mRecorder = null;
+        }
+
+        if(mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+
+        mSounds.release();
+        mEngine.release();
+    }
+
+    /**
+     * Place extra balls at the center of random empty blocs.
+     * Only while the game is stopped.
+     */
+    private void spawnBalls() {
+        if(mBalls == null)
+            return;
+
+        mBalls.clear();
+        Random random = new Random();
+        float blocSize = Ball.RADIUS * 2;
+        for(int i = 0; i < EXTRA_BALLS; i++) {
+            int x, y;
+            do {
+                x = random.nextInt(mBlocks.getColumns());
+                y = random.nextInt(mBlocks.getRows());
+            } while(mBlocks.getCell(x, y) != BlockStore.EMPTY);
+            mBalls.add((x + 0.5f) * blocSize, (y + 0.5f) * blocSize, Ball.RADIUS / 2);
+        }
+        mBalls.publish();
+    }
+
+    /**
+     * Record the game in a new trace file.
+     */
+    private void startRecording() {
+        File directory = getExternalFilesDir("traces");
+        if(directory == null)
+            return;
+
+        File file = new File(directory, "trace-" + System.currentTimeMillis() + ".lbyr");
+        try {
+            mRecorder = new TraceRecorder(new FileOutputStream(file));
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to record trace " + file, e);
+            return;
+        }
+        mEngine.setRecorder(mRecorder);
+        mColors.setRecorder(mRecorder);
     }
 
     public void showInfoDialog(int id) {
@@ -110,20 +314,24 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
 
         switch(id) {
             case VICTORY_DIALOG:
-                soundToPlay = R.raw.win;
+                soundToPlay = SoundGameEngine.WIN;
                 builder.setCancelable(false)
                         .setMessage(R.string.victory_title)
                         .setTitle(R.string.victory_msg)
-                        .setNeutralButton(R.string.restart_game, new DialogInterface.OnClickListener() {
+                        .setNeutralButton(R.string.next_level, new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                mEngine.reset();
+                                // Next level, usually prepared while this one was played
+                                mLevel = mEngine.buildLabyrinthe(mLevel.getIndex() + 1);
+                                mBlocks = mLevel.getBlocks();
+                                mView.setLevel(mLevel);
+                                spawnBalls();
                                 mEngine.resume();
                             }
                         });
                 break;
             case DEFEAT_DIALOG:
-                soundToPlay = R.raw.loose;
+                soundToPlay = SoundGameEngine.LOOSE;
                 builder.setCancelable(false)
                         .setMessage(R.string.defeat_msg)
                         .setTitle(R.string.defeat_title)
@@ -131,12 +339,13 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
                                 mEngine.reset();
+                                spawnBalls();
                                 mEngine.resume();
                             }
                         });
                 break;
             case WALKING_DIALOG:
-                soundToPlay = R.raw.walking;
+                soundToPlay = SoundGameEngine.WALKING;
                 builder.setCancelable(false)
                         .setMessage(R.string.moving_msg)
                         .setTitle(R.string.moving_title)
@@ -151,50 +360,51 @@ public class GameActivity extends AppCompatActivity implements SensorEventListen
                 this.tsWalkingDialog = currentTimestamp + 3;
                 break;
             default:
-                soundToPlay = R.raw.loose;
+                soundToPlay = SoundGameEngine.LOOSE;
                 break;
         }
 
         builder.show();
 
-        mediaPlayer = MediaPlayer.create(this, soundToPlay);
-
-        // Set completion handler on media player
-        mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
-            public void onCompletion(MediaPlayer mp) {
-                mediaPlayer.release();
-            }
-        });
-
-        // Pause if media already played or start it
-        try {
-            if (mediaPlayer.isPlaying()) {
-                mediaPlayer.stop();
-            }
-            mediaPlayer.start();
-        } catch(Exception e) { e.printStackTrace(); }
+        // Sound is already decoded, playing it doesn't block
+        mSounds.play(soundToPlay);
     }
 
     @Override
     public void onSensorChanged(SensorEvent sensorEvent) {
 
+        boolean pending = mLuminosityChanged || mMagneticChanged;
+
         switch (sensorEvent.sensor.getType()) {
             case Sensor.TYPE_LIGHT:
-                float mLuminosity = sensorEvent.values[0];
-                mView.setSurfaceBgColor(mLuminosity);
+                if(mColors.addLuminosity(sensorEvent.timestamp, sensorEvent.values[0]))
+                    mLuminosityChanged = true;
                 break;
             case Sensor.TYPE_MAGNETIC_FIELD:
-                float xMagnetic = sensorEvent.values[0];
-                float yMagnetic = sensorEvent.values[1];
-                float zMagnetic = sensorEvent.values[2];
-                double mMagnetic = Math.sqrt((double) (xMagnetic * xMagnetic + yMagnetic * yMagnetic + zMagnetic * zMagnetic));
-                mBall.setBallColor(mMagnetic);
+                if(mColors.addMagnetic(sensorEvent.timestamp, sensorEvent.values[0], sensorEvent.values[1], sensorEvent.values[2]))
+                    mMagneticChanged = true;
                 break;
             default:
                 break;
         }
+
+        // A batch is dispatched in one go, colors are updated once after its last event
+        if(!pending && (mLuminosityChanged || mMagneticChanged))
+            mHandler.post(mApplyColors);
     }
 
+    private final Runnable mApplyColors = new Runnable() {
+        @Override
+        public void run() {
+            if(mLuminosityChanged)
+                mView.setLuminosityLevel(mColors.getLuminosityLevel());
+            if(mMagneticChanged)
+                mBall.setMagneticLevel(mColors.getMagneticLevel());
+            mLuminosityChanged = false;
+            mMagneticChanged = false;
+        }
+    };
+
     @Override
     public void onAccuracyChanged(Sensor sensor, int i) {
 
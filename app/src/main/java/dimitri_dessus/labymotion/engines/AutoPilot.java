@@ -0,0 +1,100 @@
+package dimitri_dessus.labymotion.engines;
+
+import dimitri_dessus.labymotion.levels.DistanceField;
+import dimitri_dessus.labymotion.models.Ball;
+
+/**
+ * Bot playing the game, for attract mode and tests.
+ *
+ * On each physics step the bot reads the next cell toward END from the distance
+ * field of the level, and tilts the device so the ball rolls to the centre of
+ * that cell at a moderate speed. The tilt is given as an accelerometer sample
+ * of constant length, so it is never taken for a walking player.
+ *
+ * @see DistanceField
+ */
+
+public class AutoPilot {
+
+    // Standard gravity, in m/s^2
+    private static final float GRAVITY = 9.80665f;
+
+    // Max tilt on each axis, in m/s^2
+    private static final float MAX_TILT = 6.0f;
+
+    // Speed aimed at, in cells per step, and speed gained per distance to the target
+    private static final float SPEED = 0.08f;
+    private static final float GAIN = 0.15f;
+
+    // Accelerometer sample of the last update
+    private float mX = 0;
+    private float mY = 0;
+    private float mZ = GRAVITY;
+
+    /**
+     * Compute the tilt steering the ball toward END.
+     *
+     * @param pBall Ball of the game.
+     * @param pField Distance field of the level.
+     * @param pSize Size of the cells.
+     */
+    public void update(Ball pBall, DistanceField pField, float pSize) {
+        float x = pBall.getX();
+        float y = pBall.getY();
+        int cellX = (int) Math.floor(x / pSize);
+        int cellY = (int) Math.floor(y / pSize);
+
+        // Centre of the next cell, or of this one when on END or lost
+        int next = pField.getNext(cellX, cellY);
+        if(next != -1) {
+            cellX = next % pField.getColumns();
+            cellY = next / pField.getColumns();
+        }
+        float toX = (cellX + 0.5f) * pSize - x;
+        float toY = (cellY + 0.5f) * pSize - y;
+
+        // Speed wanted, slowing down near the target
+        float speedX = toX * GAIN;
+        float speedY = toY * GAIN;
+        float speed = (float) Math.sqrt(speedX * speedX + speedY * speedY);
+        float maxSpeed = SPEED * pSize;
+        if(speed > maxSpeed) {
+            speedX *= maxSpeed / speed;
+            speedY *= maxSpeed / speed;
+        }
+
+        // Tilt in X moves the ball in the Y axis of the screen, as for Ball
+        float tiltY = (speedX - (x - pBall.getLastX())) * Ball.COMPENSATOR;
+        float tiltX = (speedY - (y - pBall.getLastY())) * Ball.COMPENSATOR;
+        mX = Math.max(Math.min(tiltX, MAX_TILT), -MAX_TILT);
+        mY = Math.max(Math.min(tiltY, MAX_TILT), -MAX_TILT);
+        mZ = (float) Math.sqrt(GRAVITY * GRAVITY - mX * mX - mY * mY);
+    }
+
+    /**
+     * Getter of the acceleration in the X axis
+     *
+     * @return Acceleration of the sample in the X axis.
+     */
+    public float getX() {
+        return mX;
+    }
+
+    /**
+     * Getter of the acceleration in the Y axis
+     *
+     * @return Acceleration of the sample in the Y axis.
+     */
+    public float getY() {
+        return mY;
+    }
+
+    /**
+     * Getter of the acceleration in the Z axis
+     *
+     * @return Acceleration of the sample in the Z axis.
+     */
+    public float getZ() {
+        return mZ;
+    }
+}
@@ -0,0 +1,136 @@
+package dimitri_dessus.labymotion.engines;
+
+/**
+ * Part of the world shown on the screen, following the ball.
+ *
+ * The world is the labyrinth in world coordinates, where a cell is twice the
+ * ball radius, and can be much larger than the screen. The view only scrolls
+ * when the ball leaves the middle of the screen, so a ball rolling around its
+ * neighbourhood only needs the parts of the screen it crossed to be drawn
+ * again. The view never shows outside the world, and stays at the top left
+ * corner on an axis where the world is smaller than the screen.
+ *
+ * The view is moved by whole pixels, so pre-rendered parts of the world are
+ * drawn without filtering. Only used by the drawing thread.
+ */
+
+public class Camera {
+
+    // Share of the screen, on each side, the ball can enter before the view scrolls
+    private static final float DEAD_ZONE = 0.25f;
+
+    private int mViewWidth  = 0;
+    private int mViewHeight = 0;
+    private float mWorldWidth  = 0;
+    private float mWorldHeight = 0;
+
+    // World position of the top left corner of the screen
+    private int mLeft = 0;
+    private int mTop  = 0;
+
+    /**
+     * Set the size of the screen.
+     *
+     * @param pWidth Width of the screen in pixels.
+     * @param pHeight Height of the screen in pixels.
+     */
+    public void setViewport(int pWidth, int pHeight) {
+        this.mViewWidth = pWidth;
+        this.mViewHeight = pHeight;
+    }
+
+    /**
+     * Set the size of the world.
+     *
+     * @param pWidth Width of the world.
+     * @param pHeight Height of the world.
+     */
+    public void setWorld(float pWidth, float pHeight) {
+        this.mWorldWidth = pWidth;
+        this.mWorldHeight = pHeight;
+    }
+
+    /**
+     * Scroll the view to keep a position out of the screen sides.
+     *
+     * @param pX Position in the X axis of the world.
+     * @param pY Position in the Y axis of the world.
+     * @return True if the view moved.
+     */
+    public boolean follow(float pX, float pY) {
+        int left = scroll(mLeft, pX, mViewWidth, mWorldWidth);
+        int top = scroll(mTop, pY, mViewHeight, mWorldHeight);
+        if(left == mLeft && top == mTop)
+            return false;
+
+        mLeft = left;
+        mTop = top;
+        return true;
+    }
+
+    /**
+     * Check if a rectangle of the world is on the screen.
+     *
+     * @return True if the rectangle and the screen overlap.
+     */
+    public boolean isVisible(float pLeft, float pTop, float pRight, float pBottom) {
+        return pRight > mLeft && pLeft < mLeft + mViewWidth && pBottom > mTop && pTop < mTop + mViewHeight;
+    }
+
+    /**
+     * Getter of the world position of the left side of the screen
+     *
+     * @return Position in pixels.
+     */
+    public int getLeft() {
+        return mLeft;
+    }
+
+    /**
+     * Getter of the world position of the top side of the screen
+     *
+     * @return Position in pixels.
+     */
+    public int getTop() {
+        return mTop;
+    }
+
+    /**
+     * Getter of the width of the screen
+     *
+     * @return Width in pixels.
+     */
+    public int getViewWidth() {
+        return mViewWidth;
+    }
+
+    /**
+     * Getter of the height of the screen
+     *
+     * @return Height in pixels.
+     */
+    public int getViewHeight() {
+        return mViewHeight;
+    }
+
+    /**
+     * Scroll the view on one axis.
+     *
+     * @param pStart Current start of the view.
+     * @param pPosition Position to keep in the middle of the view.
+     * @param pView Size of the view.
+     * @param pWorld Size of the world.
+     * @return New start of the view.
+     */
+    private static int scroll(int pStart, float pPosition, int pView, float pWorld) {
+        float margin = pView * DEAD_ZONE;
+        int start = pStart;
+        if(pPosition - start < margin)
+            start = (int) Math.floor(pPosition - margin);
+        else if(pPosition - start > pView - margin)
+            start = (int) Math.ceil(pPosition - pView + margin);
+
+        int max = Math.max((int) Math.ceil(pWorld) - pView, 0);
+        return Math.min(Math.max(start, 0), max);
+    }
+}
@@ -0,0 +1,445 @@
+package dimitri_dessus.labymotion.engines;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import dimitri_dessus.labymotion.levels.DistanceField;
+import dimitri_dessus.labymotion.levels.PreparedLevel;
+import dimitri_dessus.labymotion.metrics.Metrics;
+import dimitri_dessus.labymotion.models.Ball;
+import dimitri_dessus.labymotion.models.BallSystem;
+import dimitri_dessus.labymotion.models.BlockStore;
+import dimitri_dessus.labymotion.models.Collision;
+import dimitri_dessus.labymotion.models.WallContacts;
+import dimitri_dessus.labymotion.replay.TraceRecorder;
+import dimitri_dessus.labymotion.sensors.MotionDetector;
+
+/**
+ * Game rules driven by accelerometer samples, without any Android service.
+ *
+ * Time is read from sample timestamps: the ball moves by fixed steps, each step
+ * using the tilt of the last sample taken before it. The same samples always
+ * give the same game, whether they come from the sensor, in batches or not,
+ * or from a recorded trace.
+ */
+
+public class GameSimulation {
+
+    // Outcome of a sample
+    public static final int NONE    = 0;
+    public static final int DEFEAT  = 1;
+    public static final int VICTORY = 2;
+    public static final int WALKING = 3;
+
+    // Default physics step, matches the SENSOR_DELAY_GAME rate the ball speed was tuned for
+    public static final long DEFAULT_TIME_STEP = TimeUnit.MILLISECONDS.toNanos(20);
+
+    // Max steps run between two samples, longer sensor gaps are dropped
+    private static final int MAX_STEPS_PER_SAMPLE = 5;
+
+    // Header of saved states
+    private static final byte[] STATE_MAGIC = { 'L', 'B', 'Y', 'S' };
+    private static final int STATE_VERSION  = 1;
+
+    private Ball mBall              = null;
+    private BlockStore mBlocks      = null;
+    private DistanceField mField    = null;
+    private int mLevel              = -1;
+    private final Collision mCollision = new Collision();
+    private final WallContacts mWalls = new WallContacts();
+    private BallSystem mBalls       = null;
+    private long mTimeStep          = DEFAULT_TIME_STEP;
+
+    // Step of the current run, sensor time of the next step and tilt held until then
+    private long mRunTimeStep       = DEFAULT_TIME_STEP;
+    private long mClock             = 0;
+    private boolean mStarted        = false;
+    private float mTiltX            = 0;
+    private float mTiltY            = 0;
+
+    // Run restored by restoreState, kept by the next resume
+    private boolean mRestored       = false;
+
+    // Walking detection
+    private final MotionDetector mMotionDetector = new MotionDetector();
+
+    // Bot replacing the accelerometer, null when the player plays
+    private AutoPilot mPilot        = null;
+
+    // Optional trace of every input
+    private TraceRecorder mRecorder = null;
+    private int mRecordedWidth      = -1;
+    private int mRecordedHeight     = -1;
+
+    /**
+     * Start a new run, ball stays still until the first sample.
+     * Samples taken before are forgotten. After restoreState, the restored run
+     * goes on instead, once.
+     */
+    public void resume() {
+        if(mRestored) {
+            mRestored = false;
+        } else {
+            mRunTimeStep = mTimeStep;
+            mStarted = false;
+            mTiltX = 0;
+            mTiltY = 0;
+            mMotionDetector.reset();
+        }
+
+        if(mRecorder != null)
+            mRecorder.recordResume(mTimeStep);
+    }
+
+    /**
+     * Reset ball to original position
+     */
+    public void reset() {
+        mBall.reset();
+
+        // Walls touched in the lost run must not change the order of the next solve
+        mWalls.clear();
+
+        if(mRecorder != null)
+            mRecorder.recordReset();
+    }
+
+    /**
+     * Add an accelerometer sample. Steps elapsed before the sample are run with
+     * the previous tilt, then the sample becomes the current tilt.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pX Acceleration in the X axis.
+     * @param pY Acceleration in the Y axis.
+     * @param pZ Acceleration in the Z axis.
+     * @return DEFEAT or VICTORY if the game ended, WALKING if the player is walking, NONE otherwise.
+     */
+    public int addSample(long pTimestamp, float pX, float pY, float pZ) {
+        // Bot steers from the ball position at the sample, its samples are the ones recorded
+        if(mPilot != null) {
+            mPilot.update(mBall, mField, Ball.RADIUS * 2);
+            pX = mPilot.getX();
+            pY = mPilot.getY();
+            pZ = mPilot.getZ();
+        }
+
+        if(mRecorder != null) {
+            // Area where the ball rolls, record it before the sample seeing it
+            int width = mBall.getWidth();
+            int height = mBall.getHeight();
+            if(width != mRecordedWidth || height != mRecordedHeight) {
+                mRecordedWidth = width;
+                mRecordedHeight = height;
+                mRecorder.recordSize(width, height);
+            }
+            mRecorder.recordAccelerometer(pTimestamp, pX, pY, pZ);
+        }
+
+        // Start the clock on first sample and drop gaps we can't catch up
+        long maxGap = mRunTimeStep * MAX_STEPS_PER_SAMPLE;
+        if(!mStarted || pTimestamp - mClock > maxGap) {
+            mClock = mStarted ? pTimestamp - maxGap : pTimestamp;
+            mStarted = true;
+        }
+
+        while (pTimestamp - mClock >= mRunTimeStep) {
+            mClock += mRunTimeStep;
+
+            int outcome = step(mTiltX, mTiltY);
+            if(outcome != NONE)
+                return outcome;
+        }
+
+        mTiltX = pX;
+        mTiltY = pY;
+
+        // If player is walking, report it
+        if(mMotionDetector.addSample(pX, pY, pZ))
+            return WALKING;
+        return NONE;
+    }
+
+    /**
+     * Move the ball of one physics step, then check collisions.
+     *
+     * @param x Tilt in the X axis during the step.
+     * @param y Tilt in the Y axis during the step.
+     * @return DEFEAT or VICTORY if the ball hit a bloc ending the game, NONE otherwise.
+     */
+    private int step(float x, float y) {
+        if(mBall == null)
+            return NONE;
+
+        long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+
+        // Updating ball coordinates
+        mBall.putXAndY(x, y);
+
+        // Push the ball back from the walls it ran into
+        if(mWalls.resolve(mBlocks, Ball.RADIUS * 2, mBall.getLastX(), mBall.getLastY(), mBall.getX(), mBall.getY(), Ball.RADIUS))
+            mBall.applyWalls(mWalls);
+
+        // Check blocs crossed by the ball during the step
+        boolean hit = mBlocks.sweep(mBall.getLastX(), mBall.getLastY(), mBall.getX(), mBall.getY(), Ball.RADIUS, mCollision);
+
+        // Stop the ball where it hit the bloc
+        if(hit)
+            mBall.rewind(mCollision.getTime());
+
+        // Extra balls roll with the same tilt, they never touch the player ball
+        if(mBalls != null) {
+            mBalls.setBounds(mBall.getWidth(), mBall.getHeight());
+            mBalls.step(x, y, mBlocks, Ball.RADIUS * 2);
+            mBalls.publish();
+        }
+
+        // Hand new position to the drawing thread
+        mBall.publish();
+
+        if(start != 0)
+            Metrics.STEP_TIME.record(System.nanoTime() - start);
+
+        if(hit) {
+            // Detect type of bloc
+            switch(mCollision.getType()) {
+                case BlockStore.HOLE:
+                    return DEFEAT;
+                case BlockStore.END:
+                    return VICTORY;
+            }
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Set duration of one physics step.
+     * Ball speed does not depend on the sensor rate, only on this step.
+     * Applied on next resume.
+     *
+     * @param pTimeStep Step duration in nanoseconds.
+     */
+    public void setTimeStep(long pTimeStep) {
+        this.mTimeStep = pTimeStep;
+    }
+
+    /**
+     * Set ball of the game
+     *
+     * @param pBall New ball object
+     * @see Ball
+     */
+    public void setBall(Ball pBall) {
+        this.mBall = pBall;
+    }
+
+    /**
+     * Getter of the ball of the game
+     *
+     * @return Ball object.
+     */
+    public Ball getBall() {
+        return mBall;
+    }
+
+    /**
+     * Set extra balls rolling in the labyrinth with the player ball.
+     * They don't change the outcome of the game and are not recorded in traces.
+     *
+     * @param pBalls Extra balls, null for none.
+     * @see BallSystem
+     */
+    public void setBalls(BallSystem pBalls) {
+        this.mBalls = pBalls;
+    }
+
+    /**
+     * Set blocs of the labyrinth, ball rolls inside and starts on the start bloc.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @throws IllegalStateException If the labyrinth has no start bloc.
+     * @see BlockStore
+     */
+    public void setBlocks(BlockStore pBlocks) {
+        setBlocks(pBlocks, DistanceField.compute(pBlocks));
+        this.mLevel = -1;
+    }
+
+    /**
+     * Set a level prepared in advance, nothing is computed on the level.
+     *
+     * @param pLevel Level ready to be played.
+     * @throws IllegalStateException If the labyrinth has no start bloc.
+     * @see PreparedLevel
+     */
+    public void setLevel(PreparedLevel pLevel) {
+        setBlocks(pLevel.getBlocks(), pLevel.getDistanceField());
+        this.mLevel = pLevel.getIndex();
+    }
+
+    private void setBlocks(BlockStore pBlocks, DistanceField pField) {
+        int start = pBlocks.indexOf(BlockStore.START);
+        if(start == -1)
+            throw new IllegalStateException("Labyrinth has no start bloc");
+
+        this.mBlocks = pBlocks;
+        this.mField = pField;
+        mWalls.clear();
+        mRestored = false;
+
+        // Ball rolls in the whole labyrinth, which may be larger than the screen
+        float blocSize = Ball.RADIUS * 2;
+        mBall.setWidth((int) Math.ceil(pBlocks.getColumns() * blocSize));
+        mBall.setHeight((int) Math.ceil(pBlocks.getRows() * blocSize));
+
+        float left = (start % pBlocks.getColumns()) * blocSize;
+        float top = (start / pBlocks.getColumns()) * blocSize;
+        mBall.setInitialPosition(left, top);
+
+        if(mRecorder != null)
+            mRecorder.recordLevel(pBlocks, Ball.RADIUS);
+    }
+
+    /**
+     * Getter of the blocs of the labyrinth
+     *
+     * @return Blocs of the labyrinth.
+     */
+    public BlockStore getBlocks() {
+        return mBlocks;
+    }
+
+    /**
+     * Getter of the distance field of the labyrinth, computed once per level
+     *
+     * @return Way to END from every cell, null before the first labyrinth.
+     * @see DistanceField
+     */
+    public DistanceField getDistanceField() {
+        return mField;
+    }
+
+    /**
+     * Save the state of the game in a few hundred bytes, without allocating
+     * anything but the returned array.
+     *
+     * Format: "LBYS" magic and version byte, level index, columns and rows as ints,
+     * ball radius as float, physics step and clock of the run as longs, run
+     * started as byte, held tilt as floats, then the ball and the walking
+     * detector state. The labyrinth itself is not saved, only its index.
+     * Only while the game is stopped.
+     *
+     * @return Saved state.
+     * @see #restoreState(byte[])
+     */
+    public byte[] saveState() {
+        ByteBuffer buffer = ByteBuffer.allocate(getStateSize());
+        buffer.put(STATE_MAGIC);
+        buffer.put((byte) STATE_VERSION);
+        buffer.putInt(mLevel);
+        buffer.putInt(mBlocks.getColumns());
+        buffer.putInt(mBlocks.getRows());
+        buffer.putFloat(Ball.RADIUS);
+        buffer.putLong(mRunTimeStep);
+        buffer.putLong(mClock);
+        buffer.put((byte) (mStarted ? 1 : 0));
+        buffer.putFloat(mTiltX);
+        buffer.putFloat(mTiltY);
+        mBall.writeState(buffer);
+        mMotionDetector.writeState(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Restore a saved state on the labyrinth being played, so the game goes on
+     * from where it was saved. Positions and speeds are scaled if the ball radius
+     * changed since, with the screen size. The next resume goes on with the
+     * restored timers and walking detection. The state is recorded in the trace.
+     * Only while the game is stopped.
+     *
+     * @param pState State saved by saveState.
+     * @return False if the state is not of this version or of this labyrinth, nothing is restored then.
+     * @see #saveState()
+     */
+    public boolean restoreState(byte[] pState) {
+        if(mBlocks == null || !hasStateHeader(pState) || pState.length != getStateSize()
+                || getSavedLevel(pState) != mLevel)
+            return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(pState);
+        buffer.position(STATE_MAGIC.length + 5);
+        if(buffer.getInt() != mBlocks.getColumns() || buffer.getInt() != mBlocks.getRows())
+            return false;
+        float radius = buffer.getFloat();
+        if(!(radius > 0))
+            return false;
+
+        mRunTimeStep = buffer.getLong();
+        mClock = buffer.getLong();
+        mStarted = buffer.get() != 0;
+        mTiltX = buffer.getFloat();
+        mTiltY = buffer.getFloat();
+        mBall.readState(buffer, Ball.RADIUS / radius);
+        mMotionDetector.readState(buffer);
+        mWalls.clear();
+        mRestored = true;
+
+        if(mRecorder != null)
+            mRecorder.recordState(pState);
+        return true;
+    }
+
+    /**
+     * Getter of the level of a saved state
+     *
+     * @param pState State saved by saveState.
+     * @return Index of the level in the registry, -1 if unknown or if the state is not of this version.
+     */
+    public static int getSavedLevel(byte[] pState) {
+        if(!hasStateHeader(pState))
+            return -1;
+        return ByteBuffer.wrap(pState).getInt(STATE_MAGIC.length + 1);
+    }
+
+    private static boolean hasStateHeader(byte[] pState) {
+        if(pState == null || pState.length < STATE_MAGIC.length + 5)
+            return false;
+        for(int i = 0; i < STATE_MAGIC.length; i++) {
+            if(pState[i] != STATE_MAGIC[i])
+                return false;
+        }
+        return pState[STATE_MAGIC.length] == STATE_VERSION;
+    }
+
+    private int getStateSize() {
+        return STATE_MAGIC.length + 1 + 4 * 4 + 8 * 2 + 1 + 4 * 2
+                + Ball.STATE_SIZE + mMotionDetector.getStateSize();
+    }
+
+    /**
+     * Let a bot play instead of the player. Sensor samples only give the time,
+     * the tilt comes from the bot.
+     *
+     * @param pEnabled True to let the bot play.
+     * @see AutoPilot
+     */
+    public void setAutoPilot(boolean pEnabled) {
+        this.mPilot = pEnabled ? new AutoPilot() : null;
+    }
+
+    /**
+     * Record every input of the game from now on.
+     * Current labyrinth is recorded first.
+     *
+     * @param pRecorder Trace to write, null to stop recording.
+     * @see TraceRecorder
+     */
+    public void setRecorder(TraceRecorder pRecorder) {
+        this.mRecorder = pRecorder;
+        this.mRecordedWidth = -1;
+        this.mRecordedHeight = -1;
+
+        if(pRecorder != null && mBlocks != null)
+            pRecorder.recordLevel(mBlocks, Ball.RADIUS);
+    }
+}
@@ -1,17 +1,33 @@
 package dimitri_dessus.labymotion.engines;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Debug;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import dimitri_dessus.labymotion.levels.DistanceField;
+import dimitri_dessus.labymotion.levels.PreparedLevel;
+import dimitri_dessus.labymotion.metrics.Metrics;
+import dimitri_dessus.labymotion.metrics.MetricsSnapshot;
 import dimitri_dessus.labymotion.models.Ball;
-import dimitri_dessus.labymotion.models.Bloc;
+import dimitri_dessus.labymotion.models.BallSnapshot;
+import dimitri_dessus.labymotion.models.BallSystem;
+import dimitri_dessus.labymotion.models.BlockRects;
+import dimitri_dessus.labymotion.models.BlockStore;
 
 /**
  * Created by Dimitri on 14/04/2017.
@@ -23,13 +39,73 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
     private static final String TAG         = "GraphicGameEngine";
     public static final int SURFACE_RATIO   = 25;
 
+    // Debug overlay refreshed twice a second, text size in pixels
+    private static final long OVERLAY_PERIOD    = 500000000L;
+    private static final float OVERLAY_TEXT_SIZE = 24.0f;
+
+    // Color of the extra balls
+    private static final int EXTRA_BALL_COLOR = Color.DKGRAY;
+
+    // Color of the wall blocs
+    private static final int WALL_COLOR = 0xFF795548;
+
+    // Path hint: number of cells shown ahead of the ball, and color of the dots
+    private static final int HINT_LENGTH = 6;
+    private static final int HINT_COLOR = 0x80FFFFFF;
+
     private final SurfaceHolder mSurfaceHolder;
-    private final DrawingThread mThread;
+    private DrawingThread mThread;
     private final Paint mPaint;
 
-    private Ball mBall;
-    private int surfaceBgColor = Color.CYAN;
-    private List<Bloc> mBlocks = null;
+    private volatile Ball mBall;
+    private volatile BallSystem mBalls = null;
+    private volatile int surfaceBgColor = Color.CYAN;
+
+    // Surface color of each luminosity level
+    private static final int[] LUMINOSITY_COLORS = {Color.GRAY, Color.BLUE, Color.CYAN, Color.YELLOW};
+
+    // Level drawn, swapped in one write when the next level is ready
+    private volatile PreparedLevel mLevel = null;
+
+    // Set to show the way to END from the ball
+    private volatile boolean mShowHint = false;
+
+    // Set when the whole surface must be drawn again, taken and cleared at once by the drawing thread
+    private final AtomicBoolean mFullRedraw = new AtomicBoolean(true);
+
+    // State of the frame being drawn, only used by the drawing thread
+    private float mFrameX;
+    private float mFrameY;
+    private int mFrameBallColor;
+    private int mFrameBgColor;
+    private PreparedLevel mFrameLevel;
+
+    // Size of the surface, and part of the world shown on it, only used by the drawing thread
+    private volatile int mSurfaceWidth = 0;
+    private volatile int mSurfaceHeight = 0;
+    private final Camera mCamera = new Camera();
+
+    // Blocs pre-rendered in tiles, only the tiles on the screen are kept, so memory and
+    // drawing depend on the size of the screen and not on the size of the maze.
+    // Index of the tile each bitmap holds, -1 when free. Emptied when the maze or the size change.
+    private Bitmap[] mTiles = new Bitmap[0];
+    private PreparedLevel mTileLevel = null;
+    private int[] mTileKeys = new int[0];
+    private float mTileSize = 0;
+    private final Canvas mTileCanvas = new Canvas();
+    private volatile boolean mTilesInvalid = true;
+
+    // Frame counters
+    private volatile long mDrawnFrames      = 0;
+    private volatile long mSkippedFrames    = 0;
+    private volatile long mFrameTime        = 0;
+
+    // Time between two display vsyncs, in nanoseconds
+    private volatile long mVsyncPeriod      = 1000000000L / 60;
+
+    // Lines of the metrics overlay, only used by the drawing thread, null when hidden
+    private String[] mOverlayLines = null;
+    private final Paint mOverlayPaint;
 
     /**
      * Constructor of GraphicGameEngine class.
@@ -41,11 +117,15 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
         super(pContext);
         mSurfaceHolder = getHolder();
         mSurfaceHolder.addCallback(this);
-        mThread = new DrawingThread();
 
         mPaint = new Paint();
         mPaint.setStyle(Paint.Style.FILL);
 
+        mOverlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mOverlayPaint.setColor(Color.WHITE);
+        mOverlayPaint.setTextSize(OVERLAY_TEXT_SIZE);
+        mOverlayPaint.setShadowLayer(2.0f, 1.0f, 1.0f, Color.BLACK);
+
         mBall = new Ball();
     }
 
@@ -61,29 +141,186 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
         super.draw(pCanvas);
 
         // Draw background
-        pCanvas.drawColor(this.surfaceBgColor);
-        if(mBlocks != null) {
-            // Draw blocs
-            for(Bloc b : mBlocks) {
-                switch(b.getType()) {
-                    case START:
-                        mPaint.setColor(Color.WHITE);
-                        break;
-                    case END:
-                        mPaint.setColor(Color.RED);
-                        break;
-                    case HOLE:
-                        mPaint.setColor(Color.BLACK);
-                        break;
+        pCanvas.drawColor(mFrameBgColor);
+
+        // World is drawn moved by the camera
+        pCanvas.save();
+        pCanvas.translate(-mCamera.getLeft(), -mCamera.getTop());
+
+        // Draw blocs
+        drawTiles(pCanvas);
+
+        // Draw ball
+        if(mBall != null) {
+            mPaint.setColor(mFrameBallColor);
+            pCanvas.drawCircle(mFrameX, mFrameY, Ball.RADIUS, mPaint);
+        }
+
+        // Draw the next cells toward END
+        PreparedLevel level = mFrameLevel;
+        if(mShowHint && level != null) {
+            DistanceField hint = level.getDistanceField();
+            float blocSize = Ball.RADIUS * 2;
+            int cell = hint.getNext((int) Math.floor(mFrameX / blocSize), (int) Math.floor(mFrameY / blocSize));
+            mPaint.setColor(HINT_COLOR);
+            for(int i = 0; i < HINT_LENGTH && cell != -1; i++) {
+                int x = cell % hint.getColumns();
+                int y = cell / hint.getColumns();
+                pCanvas.drawCircle((x + 0.5f) * blocSize, (y + 0.5f) * blocSize, Ball.RADIUS / 4, mPaint);
+                cell = hint.getNext(x, y);
+            }
+        }
+
+        // Draw extra balls, as of the last acquire of the drawing thread
+        BallSystem balls = mBalls;
+        if(balls != null) {
+            BallSnapshot snapshot = balls.getSnapshot();
+            mPaint.setColor(EXTRA_BALL_COLOR);
+            for(int i = 0; i + 2 < snapshot.getLength(); i += 3) {
+                float x = snapshot.getValue(i);
+                float y = snapshot.getValue(i + 1);
+                float radius = snapshot.getValue(i + 2);
+                if(mCamera.isVisible(x - radius, y - radius, x + radius, y + radius))
+                    pCanvas.drawCircle(x, y, radius, mPaint);
+            }
+        }
+        pCanvas.restore();
+
+        // Draw metrics overlay
+        String[] lines = mOverlayLines;
+        if(lines != null) {
+            for(int i = 0; i < lines.length; i++)
+                pCanvas.drawText(lines[i], OVERLAY_TEXT_SIZE, OVERLAY_TEXT_SIZE * (i + 2), mOverlayPaint);
+        }
+    }
+
+    /**
+     * Draw the tiles of blocs on the screen, rendering the ones not kept yet.
+     * Called from the drawing thread, which is the only one using the tiles.
+     *
+     * @param pCanvas Canvas moved by the camera.
+     */
+    private void drawTiles(Canvas pCanvas) {
+        PreparedLevel level = mFrameLevel;
+        if(level == null)
+            return;
+        BlockRects rects = level.getRects();
+        float tileSize = rects.getTileCells() * Ball.RADIUS * 2;
+        if(mTilesInvalid || tileSize != mTileSize || level != mTileLevel) {
+            mTilesInvalid = false;
+            releaseTiles();
+            mTileSize = tileSize;
+            mTileLevel = level;
+
+            // Enough tiles to cover the screen wherever the camera is
+            int count = ((int) Math.ceil(mCamera.getViewWidth() / tileSize) + 1)
+                    * ((int) Math.ceil(mCamera.getViewHeight() / tileSize) + 1);
+            mTiles = new Bitmap[count];
+            mTileKeys = new int[count];
+            Arrays.fill(mTileKeys, -1);
+        }
+        if(tileSize <= 0)
+            return;
+
+        // Tiles on the screen
+        int tileColumns = rects.getTileColumns();
+        int tileRows = rects.getTileRows();
+        int firstX = Math.max((int) Math.floor(mCamera.getLeft() / tileSize), 0);
+        int firstY = Math.max((int) Math.floor(mCamera.getTop() / tileSize), 0);
+        int lastX = Math.min((int) Math.floor((mCamera.getLeft() + mCamera.getViewWidth() - 1) / tileSize), tileColumns - 1);
+        int lastY = Math.min((int) Math.floor((mCamera.getTop() + mCamera.getViewHeight() - 1) / tileSize), tileRows - 1);
+
+        for(int tileY = firstY; tileY <= lastY; tileY++) {
+            for(int tileX = firstX; tileX <= lastX; tileX++) {
+                int key = tileY * tileColumns + tileX;
+                int slot = findTile(key, tileColumns, firstX, firstY, lastX, lastY);
+                if(slot == -1)
+                    continue;
+                if(mTileKeys[slot] != key) {
+                    mTileKeys[slot] = key;
+                    renderTile(slot, rects, key, tileX, tileY);
                 }
-                pCanvas.drawRect(b.getRectangle(), mPaint);
+                pCanvas.drawBitmap(mTiles[slot], tileX * tileSize, tileY * tileSize, null);
             }
         }
+    }
 
-        // Draw ball
-        if(mBall != null) {
-            mPaint.setColor(mBall.getBallColor());
-            pCanvas.drawCircle(mBall.getX(), mBall.getY(), Ball.RADIUS, mPaint);
+    /**
+     * Find the bitmap holding a tile, or a bitmap free for it.
+     *
+     * @return Index of the bitmap, -1 if all of them hold tiles on the screen.
+     */
+    private int findTile(int pKey, int pTileColumns, int pFirstX, int pFirstY, int pLastX, int pLastY) {
+        int free = -1;
+        for(int i = 0; i < mTileKeys.length; i++) {
+            int key = mTileKeys[i];
+            if(key == pKey)
+                return i;
+
+            // Tile out of the screen can be replaced
+            if(free == -1 && (key == -1 || key % pTileColumns < pFirstX || key % pTileColumns > pLastX
+                    || key / pTileColumns < pFirstY || key / pTileColumns > pLastY))
+                free = i;
+        }
+        return free;
+    }
+
+    /**
+     * Render the blocs of a tile in one of the tile bitmaps.
+     *
+     * @param pSlot Index of the bitmap.
+     * @param pRects Blocs merged in rectangles.
+     * @param pTile Index of the tile.
+     * @param pTileX Position of the tile in the X axis, in tiles.
+     * @param pTileY Position of the tile in the Y axis, in tiles.
+     * @see Bitmap
+     */
+    private void renderTile(int pSlot, BlockRects pRects, int pTile, int pTileX, int pTileY) {
+        if(mTiles[pSlot] == null) {
+            int size = (int) Math.ceil(mTileSize);
+            mTiles[pSlot] = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        } else {
+            mTiles[pSlot].eraseColor(Color.TRANSPARENT);
+        }
+        mTileCanvas.setBitmap(mTiles[pSlot]);
+
+        // One rectangle per run of blocs of the same type, clipped by the tile, computed from ball radius
+        float blocSize = Ball.RADIUS * 2;
+        int firstX = pTileX * pRects.getTileCells();
+        int firstY = pTileY * pRects.getTileCells();
+        for(int entry = pRects.getTileStart(pTile); entry < pRects.getTileStart(pTile + 1); entry++) {
+            int i = pRects.getTileRect(entry);
+            switch(pRects.getType(i)) {
+                case BlockStore.START:
+                    mPaint.setColor(Color.WHITE);
+                    break;
+                case BlockStore.END:
+                    mPaint.setColor(Color.RED);
+                    break;
+                case BlockStore.HOLE:
+                    mPaint.setColor(Color.BLACK);
+                    break;
+                case BlockStore.WALL:
+                    mPaint.setColor(WALL_COLOR);
+                    break;
+                default:
+                    continue;
+            }
+
+            mTileCanvas.drawRect((pRects.getLeft(i) - firstX) * blocSize, (pRects.getTop(i) - firstY) * blocSize,
+                    (pRects.getRight(i) - firstX) * blocSize, (pRects.getBottom(i) - firstY) * blocSize, mPaint);
+        }
+    }
+
+    /**
+     * Free memory used by the tiles.
+     */
+    private void releaseTiles() {
+        for(int i = 0; i < mTiles.length; i++) {
+            if(mTiles[i] != null)
+                mTiles[i].recycle();
+            mTiles[i] = null;
+            mTileKeys[i] = -1;
         }
     }
 
@@ -97,7 +334,12 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
      * @see SurfaceHolder
      */
     @Override
-    public void surfaceChanged(SurfaceHolder pHolder, int pFormat, int pWidth, int pHeight) { }
+    public void surfaceChanged(SurfaceHolder pHolder, int pFormat, int pWidth, int pHeight) {
+        mSurfaceWidth = pWidth;
+        mSurfaceHeight = pHeight;
+        mTilesInvalid = true;
+        mFullRedraw.set(true);
+    }
 
     /**
      * Event triggered when a new surface is created.
@@ -107,13 +349,14 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
      */
     @Override
     public void surfaceCreated(SurfaceHolder pHolder) {
-        mThread.keepDrawing = true;
+        mFullRedraw.set(true);
+        Display display = getDisplay();
+        if(display != null && display.getRefreshRate() > 0)
+            mVsyncPeriod = (long) (1e9 / display.getRefreshRate());
+        mSurfaceWidth = getWidth();
+        mSurfaceHeight = getHeight();
+        mThread = new DrawingThread();
         mThread.start();
-        // Create ball using screen coordinates
-        if(mBall != null ) {
-            this.mBall.setHeight(getHeight());
-            this.mBall.setWidth(getWidth());
-        }
     }
 
     /**
@@ -125,6 +368,7 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
     @Override
     public void surfaceDestroyed(SurfaceHolder pHolder) {
         mThread.keepDrawing = false;
+        mThread.quit();
         boolean retry = true;
         while (retry) {
             try {
@@ -135,35 +379,191 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
             }
         }
 
+        // Drawing thread is over, tiles can be freed
+        releaseTiles();
+        mTilesInvalid = true;
     }
 
     /**
      * Thread used to launch draw process.
+     * A frame is drawn on each display vsync, and only if something changed.
      */
-    private class DrawingThread extends Thread {
-        boolean keepDrawing = true;
+    private class DrawingThread extends HandlerThread implements Choreographer.FrameCallback {
+        volatile boolean keepDrawing = true;
+
+        // Last drawn state
+        private float mLastX;
+        private float mLastY;
+        private int mLastColor;
+        private int mLastBgColor;
+
+        // Area of the surface to draw again
+        private final Rect mDirty = new Rect();
+
+        // Time of the previous vsync and of the last overlay refresh
+        private long mLastVsync = 0;
+        private long mOverlayTime = 0;
+
+        DrawingThread() {
+            super(TAG, Process.THREAD_PRIORITY_DISPLAY);
+        }
 
         /**
-         * When the thread is started, run this method.
+         * When the thread looper is ready, wait for the first vsync.
          *
-         * @see SurfaceHolder
+         * @see Choreographer
          */
         @Override
-        public void run() {
-            Canvas canvas;
-            while (keepDrawing) {
-                canvas = null;
+        protected void onLooperPrepared() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
 
-                try {
+        /**
+         * Called on each display vsync, draw the frame if needed.
+         *
+         * @param pFrameTimeNanos Time of the vsync.
+         * @see Choreographer
+         */
+        @Override
+        public void doFrame(long pFrameTimeNanos) {
+            if(!keepDrawing)
+                return;
+
+            // Count vsyncs passed without a callback
+            if(Metrics.isEnabled() && mLastVsync != 0) {
+                long period = mVsyncPeriod;
+                long missed = (pFrameTimeNanos - mLastVsync - period / 2) / period;
+                if(missed > 0)
+                    Metrics.DROPPED_FRAMES.addAndGet(missed);
+            }
+            mLastVsync = pFrameTimeNanos;
+
+            drawFrame();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        /**
+         * Draw the parts of the surface that changed since last frame.
+         *
+         * @see SurfaceHolder
+         */
+        private void drawFrame() {
+            // Take latest published state, without waiting for other threads
+            boolean full = mFullRedraw.getAndSet(false);
+            int bgColor = surfaceBgColor;
+            if(bgColor != mLastBgColor)
+                full = true;
+            if(updateOverlay())
+                full = true;
+            float x = mLastX;
+            float y = mLastY;
+            int color = mLastColor;
+            Ball ball = mBall;
+            if(ball != null) {
+                BallSnapshot snapshot = ball.getSnapshot();
+                snapshot.acquire();
+                x = snapshot.getX();
+                y = snapshot.getY();
+                color = ball.getBallColor();
+            }
+
+            // Scroll the view with the ball, the whole screen changes when it scrolls
+            float blocSize = Ball.RADIUS * 2;
+            PreparedLevel level = mLevel;
+            if(level != mFrameLevel)
+                full = true;
+            if(level != null)
+                mCamera.setWorld(level.getBlocks().getColumns() * blocSize, level.getBlocks().getRows() * blocSize);
+            mCamera.setViewport(mSurfaceWidth, mSurfaceHeight);
+            if(mCamera.follow(x, y))
+                full = true;
+
+            // Hint moves with the cell of the ball
+            if(mShowHint && ((int) Math.floor(x / blocSize) != (int) Math.floor(mLastX / blocSize)
+                    || (int) Math.floor(y / blocSize) != (int) Math.floor(mLastY / blocSize)))
+                full = true;
+
+            // Extra balls may be anywhere, draw the whole surface when they moved
+            BallSystem balls = mBalls;
+            if(balls != null && balls.getSnapshot().acquire())
+                full = true;
+
+            if(!full && x == mLastX && y == mLastY && color == mLastColor) {
+                // Nothing moved, keep the frame on screen
+                mSkippedFrames++;
+                return;
+            }
+
+            long start = System.nanoTime();
+            Canvas canvas = null;
+            try {
+                if(full) {
                     canvas = mSurfaceHolder.lockCanvas();
-                    synchronized (mSurfaceHolder) {
-                        draw(canvas);
-                    }
-                } finally {
-                    if (canvas != null)
-                        mSurfaceHolder.unlockCanvasAndPost(canvas);
+                } else {
+                    // Old and new bounds of the ball, on the screen
+                    mDirty.set((int) Math.floor(Math.min(x, mLastX) - Ball.RADIUS) - 1,
+                            (int) Math.floor(Math.min(y, mLastY) - Ball.RADIUS) - 1,
+                            (int) Math.ceil(Math.max(x, mLastX) + Ball.RADIUS) + 1,
+                            (int) Math.ceil(Math.max(y, mLastY) + Ball.RADIUS) + 1);
+                    mDirty.offset(-mCamera.getLeft(), -mCamera.getTop());
+                    canvas = mSurfaceHolder.lockCanvas(mDirty);
+                }
+
+                if(canvas != null) {
+                    mFrameX = x;
+                    mFrameY = y;
+                    mFrameBallColor = color;
+                    mFrameBgColor = bgColor;
+                    mFrameLevel = level;
+                    draw(canvas);
+                    mLastX = x;
+                    mLastY = y;
+                    mLastColor = color;
+                    mLastBgColor = bgColor;
+                } else if(full) {
+                    // Surface not ready, draw it all on next frame
+                    mFullRedraw.set(true);
                 }
+            } finally {
+                if (canvas != null)
+                    mSurfaceHolder.unlockCanvasAndPost(canvas);
+            }
+
+            long elapsed = System.nanoTime() - start;
+            mFrameTime += elapsed;
+            mDrawnFrames++;
+            if(Metrics.isEnabled())
+                Metrics.FRAME_TIME.record(elapsed);
+        }
+
+        /**
+         * Refresh the lines of the metrics overlay, or hide it when metrics are disabled.
+         *
+         * @return True if the overlay changed and the whole surface must be drawn.
+         */
+        private boolean updateOverlay() {
+            if(!Metrics.isEnabled()) {
+                if(mOverlayLines == null)
+                    return false;
+                mOverlayLines = null;
+                return true;
             }
+
+            long now = System.nanoTime();
+            if(mOverlayLines != null && now - mOverlayTime < OVERLAY_PERIOD)
+                return false;
+            mOverlayTime = now;
+
+            // Runtime statistics are only readable from Android 6
+            if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                String gcCount = Debug.getRuntimeStat("art.gc.gc-count");
+                if(gcCount != null)
+                    Metrics.GC_COUNT.set(Long.parseLong(gcCount));
+            }
+
+            MetricsSnapshot snapshot = Metrics.snapshot();
+            mOverlayLines = snapshot.toLines();
+            return true;
         }
     }
 
@@ -178,31 +578,80 @@ public class GraphicGameEngine extends SurfaceView implements SurfaceHolder.Call
     }
 
     /**
-     * Setter of all blocs (pattern of the game).
+     * Setter of the extra balls.
+     *
+     * @param pBalls Extra balls, null for none.
+     * @see BallSystem
+     */
+    public void setBalls(BallSystem pBalls) {
+        this.mBalls = pBalls;
+        this.mFullRedraw.set(true);
+    }
+
+    /**
+     * Setter of the level drawn (pattern of the game).
+     * Its blocs are already merged in rectangles, the drawing thread renders
+     * the tiles of the new level from its next frame.
+     *
+     * @param pLevel Prepared level.
+     * @see PreparedLevel
+     */
+    public void setLevel(PreparedLevel pLevel) {
+        this.mLevel = pLevel;
+        this.mFullRedraw.set(true);
+    }
+
+    /**
+     * Show or hide the way to END from the ball.
      *
-     * @param pBlocks The list of bloc object (pattern of the game)
-     * @see Bloc
+     * @param pVisible True to show the hint.
+     * @see DistanceField
      */
-    public void setBlocks(List<Bloc> pBlocks) {
-        this.mBlocks = pBlocks;
+    public void setHintVisible(boolean pVisible) {
+        this.mShowHint = pVisible;
+        this.mFullRedraw.set(true);
     }
 
     /**
      * Set surface color according to luminosity level.
+     *
+     * @param pLevel Level of luminosity.
+     * @see dimitri_dessus.labymotion.sensors.ColorLevels
      */
-    public void setSurfaceBgColor(float luminosity) {
+    public void setLuminosityLevel(int pLevel) {
+        int color = LUMINOSITY_COLORS[pLevel];
 
-        int color;
-        if(luminosity <= 100.0f) {
-            color = Color.GRAY;
-        } else if (luminosity > 100.0f && luminosity <= 200.0f) {
-            color = Color.BLUE;
-        } else if (luminosity > 200.0f && luminosity <= 290.0f) {
-            color = Color.CYAN;
-        } else {
-            color = Color.YELLOW;
+        if(color != this.surfaceBgColor) {
+            this.surfaceBgColor = color;
+            this.mFullRedraw.set(true);
         }
+    }
+
+    /**
+     * Getter of the number of frames drawn.
+     *
+     * @return Number of frames drawn since the engine was created.
+     */
+    public long getDrawnFrames() {
+        return mDrawnFrames;
+    }
 
-        this.surfaceBgColor = color;
+    /**
+     * Getter of the number of frames skipped because nothing changed.
+     *
+     * @return Number of frames skipped since the engine was created.
+     */
+    public long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    /**
+     * Getter of the mean time spent to draw a frame.
+     *
+     * @return Mean frame time in nanoseconds, 0 if nothing has been drawn.
+     */
+    public long getAverageFrameTime() {
+        long frames = mDrawnFrames;
+        return frames == 0 ? 0 : mFrameTime / frames;
     }
 }
@@ -1,19 +1,27 @@
 package dimitri_dessus.labymotion.engines;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
 
 import android.app.Service;
-import android.graphics.RectF;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
+import android.os.SystemClock;
+import android.util.Log;
 
 import dimitri_dessus.labymotion.GameActivity;
+import dimitri_dessus.labymotion.levels.DistanceField;
+import dimitri_dessus.labymotion.levels.LevelPreloader;
+import dimitri_dessus.labymotion.levels.LevelRegistry;
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.levels.PreparedLevel;
+import dimitri_dessus.labymotion.metrics.Metrics;
 import dimitri_dessus.labymotion.models.Ball;
-import dimitri_dessus.labymotion.models.Bloc;
-import dimitri_dessus.labymotion.models.Bloc.Type;
+import dimitri_dessus.labymotion.models.BallSystem;
+import dimitri_dessus.labymotion.replay.TraceRecorder;
+import dimitri_dessus.labymotion.sensors.SampleQueue;
 
 /**
  * Created by Dimitri on 14/04/2017.
@@ -22,23 +30,30 @@ import dimitri_dessus.labymotion.models.Bloc.Type;
 
 public class PhysicalGameEngine implements SensorEventListener {
 
-    private Ball mBall              = null;
-    private List<Bloc> mBlocks      = null;
+    private static final String TAG = "PhysicalGameEngine";
+
+    // Samples waiting for the physics thread, enough for one second of batched events
+    private static final int SAMPLE_QUEUE_SIZE = 256;
+
     private GameActivity mActivity  = null;
+    private LevelRegistry mLevels   = null;
+
+    // Next level prepared in the background while the current one is played
+    private LevelPreloader mPreloader = null;
 
     // Sensor init
     private SensorManager mManager  = null;
     private Sensor mAccelerometer   = null;
+    private int mMaxReportLatency   = 0;
+
+    // Game rules, only used by the physics thread while it runs
+    private final GameSimulation mSimulation = new GameSimulation();
 
-    // Acceleration helpers vars
-    private final int ACC_RATE          = 50;
-    private final double ACC_LIMIT      = 0.3;
-    private int accCount                = 0;
-    private double accSum               = 0.0f;
-    private double accResult            = 0.0f;
-    private double mAcceleration        = 0.0f;
-    private double mAccelerationCurrent = SensorManager.GRAVITY_EARTH;
-    private double mAccelerationLast    = SensorManager.GRAVITY_EARTH;
+    // Physics loop
+    private PhysicsThread mThread   = null;
+
+    // Samples handed from the sensor thread to the physics thread
+    private final SampleQueue mSamples = new SampleQueue(SAMPLE_QUEUE_SIZE);
 
     /**
      * Constructor of PhysicalGameEngine class
@@ -54,6 +69,30 @@ public class PhysicalGameEngine implements SensorEventListener {
         mAccelerometer = mManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
     }
 
+    /**
+     * Runnables posted on UI thread when the ball hits a bloc.
+     */
+    private final Runnable mDefeatAction = new Runnable() {
+        @Override
+        public void run() {
+            mActivity.showInfoDialog(GameActivity.DEFEAT_DIALOG);
+        }
+    };
+
+    private final Runnable mVictoryAction = new Runnable() {
+        @Override
+        public void run() {
+            mActivity.showInfoDialog(GameActivity.VICTORY_DIALOG);
+        }
+    };
+
+    private final Runnable mWalkingAction = new Runnable() {
+        @Override
+        public void run() {
+            mActivity.showInfoDialog(GameActivity.WALKING_DIALOG);
+        }
+    };
+
     /**
      * Sensor change event listener for game.
      * Triggered when sensor capture data.
@@ -63,57 +102,19 @@ public class PhysicalGameEngine implements SensorEventListener {
      */
     @Override
     public void onSensorChanged(SensorEvent pEvent) {
-        float x = pEvent.values[0];
-        float y = pEvent.values[1];
-        float z = pEvent.values[2];
-
-        // Moving ball if not null
-        if(mBall != null) {
-            // Updating ball coordinates
-            RectF hitBox = mBall.putXAndY(x, y);
-
-            for(Bloc block : mBlocks) {
-                // Create a new bloc
-                RectF inter = new RectF(block.getRectangle());
-                if(inter.intersect(hitBox)) {
-                    // Detect type of bloc
-                    switch(block.getType()) {
-                        case HOLE:
-                            mActivity.showInfoDialog(GameActivity.DEFEAT_DIALOG);
-                            break;
-                        case END:
-                            mActivity.showInfoDialog(GameActivity.VICTORY_DIALOG);
-                            break;
-                    }
-                    break;
-                }
-            }
+        long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+
+        // Queue sample for the physics thread, batched events are processed there in one pass
+        if(mSamples.offer(pEvent.timestamp, pEvent.values[0], pEvent.values[1], pEvent.values[2])) {
+            PhysicsThread thread = mThread;
+            if(thread != null)
+                LockSupport.unpark(thread);
+        } else if(start != 0) {
+            Metrics.DROPPED_SAMPLES.incrementAndGet();
         }
 
-        // Calculate acceleration
-        mAccelerationLast       = mAccelerationCurrent;
-        mAccelerationCurrent    = Math.sqrt(x * x + y * y + z * z);
-        mAcceleration           = (mAcceleration * 0.9f) + (mAccelerationCurrent - mAccelerationLast);
-
-        // If number of sample calculate exceed rate limit
-        if (accCount <= ACC_RATE) {
-            accCount++;
-            accSum += Math.abs(mAcceleration);
-        } else {
-
-            // Result of acceleration
-            accResult = accSum / ACC_RATE;
-
-            // If limit exceed, display walking alert
-            if(accResult > ACC_LIMIT) {
-                mActivity.showInfoDialog(GameActivity.WALKING_DIALOG);
-            }
-
-            // Resetting all helpers vars
-            accCount    = 0;
-            accSum      = 0;
-            accResult   = 0;
-        }
+        if(start != 0)
+            Metrics.SENSOR_CALLBACK.record(System.nanoTime() - start);
     }
 
     /**
@@ -131,25 +132,163 @@ public class PhysicalGameEngine implements SensorEventListener {
      * Reset ball to original position
      */
     public void reset() {
-        mBall.reset();
+        mSimulation.reset();
     }
 
     /**
-     * Unregister event listener on accelerometer captor
+     * Unregister event listener on accelerometer captor and stop physics loop
      */
     public void stop() {
 
         // Unregister accelerometer listener
         mManager.unregisterListener(this, mAccelerometer);
+
+        // Stop physics loop
+        if(mThread != null) {
+            mThread.keepRunning = false;
+            LockSupport.unpark(mThread);
+            boolean retry = true;
+            while (retry) {
+                try {
+                    mThread.join();
+                    retry = false;
+                } catch (InterruptedException e) {
+                    Log.d(TAG, "Error when stopping physics thread");
+                }
+            }
+            mThread = null;
+        }
     }
 
     /**
      * Attach accelerometer sensor to the event listener (to start tracking data)
+     * and start physics loop
      */
     public void resume() {
 
+        // Forget samples taken before the pause, ball stays still until the first new one
+        mSamples.clear();
+        mSimulation.resume();
+
+        // Start physics loop
+        if(mThread == null) {
+            mThread = new PhysicsThread();
+            mThread.start();
+        }
+
         // Register accelerometer listener
-        mManager.registerListener(this, mAccelerometer, SensorManager.SENSOR_DELAY_GAME);
+        mManager.registerListener(this, mAccelerometer, SensorManager.SENSOR_DELAY_GAME, mMaxReportLatency);
+    }
+
+    /**
+     * Set how long the accelerometer may keep samples in its hardware FIFO before
+     * delivering them as a batch. Batching saves wakeups but delays the ball by
+     * up to this latency. Applied on next resume.
+     *
+     * @param pMaxReportLatency Latency in microseconds, 0 delivers every sample at once.
+     */
+    public void setMaxReportLatency(int pMaxReportLatency) {
+        this.mMaxReportLatency = pMaxReportLatency;
+    }
+
+    /**
+     * Set duration of one physics step.
+     * Ball speed does not depend on the sensor rate, only on this step.
+     * Applied on next resume.
+     *
+     * @param pTimeStep Step duration in nanoseconds.
+     * @see GameSimulation#setTimeStep(long)
+     */
+    public void setTimeStep(long pTimeStep) {
+        mSimulation.setTimeStep(pTimeStep);
+    }
+
+    /**
+     * Let a bot play instead of the player, for attract mode.
+     * Only while the game is stopped.
+     *
+     * @param pEnabled True to let the bot play.
+     * @see AutoPilot
+     */
+    public void setAutoPilot(boolean pEnabled) {
+        mSimulation.setAutoPilot(pEnabled);
+    }
+
+    /**
+     * Getter of the distance field of the current labyrinth
+     *
+     * @return Way to END from every cell, null before the first labyrinth.
+     * @see DistanceField
+     */
+    public DistanceField getDistanceField() {
+        return mSimulation.getDistanceField();
+    }
+
+    /**
+     * Record every input of the game from now on.
+     * Only while the game is stopped.
+     *
+     * @param pRecorder Trace to write, null to stop recording.
+     * @see TraceRecorder
+     */
+    public void setRecorder(TraceRecorder pRecorder) {
+        mSimulation.setRecorder(pRecorder);
+    }
+
+    /**
+     * Thread running physics at a fixed time step.
+     */
+    private class PhysicsThread extends Thread {
+        volatile boolean keepRunning = true;
+
+        /**
+         * When the thread is started, run this method.
+         * Time is read from sample timestamps, so a batch of samples delivered at once
+         * moves the ball exactly as if each sample had been delivered on time.
+         */
+        @Override
+        public void run() {
+            while (keepRunning) {
+                int count = mSamples.size();
+                boolean walking = false;
+
+                // Sensor timestamps use the elapsed realtime clock
+                if(Metrics.isEnabled() && count > 0) {
+                    long now = SystemClock.elapsedRealtimeNanos();
+                    for (int i = 0; i < count; i++)
+                        Metrics.SENSOR_LATENCY.record(now - mSamples.getTimestamp(i));
+                }
+
+                for (int i = 0; i < count && keepRunning; i++) {
+                    int outcome = mSimulation.addSample(mSamples.getTimestamp(i),
+                            mSamples.getX(i), mSamples.getY(i), mSamples.getZ(i));
+
+                    // Game is over until the activity resumes it
+                    switch(outcome) {
+                        case GameSimulation.DEFEAT:
+                            mActivity.runOnUiThread(mDefeatAction);
+                            keepRunning = false;
+                            break;
+                        case GameSimulation.VICTORY:
+                            mActivity.runOnUiThread(mVictoryAction);
+                            keepRunning = false;
+                            break;
+                        case GameSimulation.WALKING:
+                            walking = true;
+                            break;
+                    }
+                }
+                mSamples.remove(count);
+
+                // If player is walking, display walking alert once for the whole batch
+                if(walking && keepRunning)
+                    mActivity.runOnUiThread(mWalkingAction);
+
+                // Wait for next samples
+                if(keepRunning)
+                    LockSupport.park(this);
+            }
+        }
     }
 
     /**
@@ -159,150 +298,122 @@ public class PhysicalGameEngine implements SensorEventListener {
      * @see Ball
      */
     public void setBall(Ball pBall) {
-        this.mBall = pBall;
+        mSimulation.setBall(pBall);
     }
 
     /**
-     * Define list of bloc used to create pattern of the game
-     * Bloc are instantiated with type, X & Y values.
+     * Set extra balls rolling with the player ball.
+     * Only while the game is stopped.
      *
-     * @return Nothing.
-     * @see Bloc
+     * @param pBalls Extra balls, null for none.
+     * @see BallSystem
+     */
+    public void setBalls(BallSystem pBalls) {
+        mSimulation.setBalls(pBalls);
+    }
+
+    /**
+     * Load blocs used to create pattern of the game
+     * Blocs are read from the level file with type, X & Y values.
+     * The level is taken from the preloader, where it is usually ready, and the
+     * next one starts being prepared in the background.
+     * Only while the game is stopped.
+     *
+     * @param pLevel Index of the level in the registry, after the last one levels start again from the first.
+     * @return Level ready to be played.
+     * @throws IllegalStateException If the level can't be read or played.
+     * @see LevelPreloader
+     */
+    public PreparedLevel buildLabyrinthe(int pLevel) {
+        PreparedLevel level;
+        int index = pLevel;
+        try {
+            openLevels();
+            index = pLevel % Math.max(mLevels.getCount(), 1);
+            level = mPreloader.take(index);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load level " + index, e);
+        }
+
+        setLevel(level);
+        return level;
+    }
+
+    /**
+     * Play a level prepared earlier, like the one kept while the activity is
+     * created again. Levels after it are prepared as with buildLabyrinthe.
+     * Only while the game is stopped.
+     *
+     * @param pLevel Level ready to be played.
+     * @throws IllegalStateException If the levels can't be read.
+     * @see PreparedLevel
+     */
+    public void setLevel(PreparedLevel pLevel) {
+        // Place ball on start bloc
+        mSimulation.setLevel(pLevel);
+        if(pLevel.getIndex() < 0)
+            return;
+
+        try {
+            openLevels();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load levels", e);
+        }
+        mPreloader.prepare((pLevel.getIndex() + 1) % Math.max(mLevels.getCount(), 1));
+    }
+
+    private void openLevels() throws IOException {
+        if(mLevels == null) {
+            mLevels = new LevelRegistry(mActivity.getAssets());
+            mPreloader = new LevelPreloader(mLevels);
+        }
+    }
+
+    /**
+     * Generate a new random labyrinth.
+     *
+     * @param pColumns Number of cells in the X axis.
+     * @param pRows Number of cells in the Y axis.
+     * @param pCorridor Width of corridors in cells.
+     * @param pSeed Seed of the labyrinth, the same seed gives the same labyrinth.
+     * @return Labyrinth ready to be played.
+     * @see MazeGenerator
+     */
+    public PreparedLevel buildRandomLabyrinthe(int pColumns, int pRows, int pCorridor, long pSeed) {
+        PreparedLevel level = PreparedLevel.prepare(-1, MazeGenerator.generate(pColumns, pRows, pCorridor, pSeed));
+        // Place ball on start bloc
+        mSimulation.setLevel(level);
+        return level;
+    }
+
+    /**
+     * Save the state of the game, to go on later from where it is.
+     * Only while the game is stopped.
+     *
+     * @return Saved state, a few hundred bytes.
+     * @see GameSimulation#saveState()
+     */
+    public byte[] saveState() {
+        return mSimulation.saveState();
+    }
+
+    /**
+     * Restore a state saved on the same level.
+     * Only while the game is stopped.
+     *
+     * @param pState Saved state.
+     * @return False if the state can't be restored, the ball stays on the start bloc then.
+     * @see GameSimulation#restoreState(byte[])
+     */
+    public boolean restoreState(byte[] pState) {
+        return mSimulation.restoreState(pState);
+    }
+
+    /**
+     * Stop preparing levels, when the game is over.
      */
-    public List<Bloc> buildLabyrinthe() {
-        mBlocks = new ArrayList<>();
-        mBlocks.add(new Bloc(Type.HOLE, 0, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 1));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 2));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 3));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 4));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 6));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 7));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 10));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 11));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 12));
-        mBlocks.add(new Bloc(Type.HOLE, 0, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 1, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 1, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 2, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 2, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 3, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 3, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 4, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 1));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 2));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 3));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 4));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 6));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 7));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 10));
-        mBlocks.add(new Bloc(Type.HOLE, 4, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 5, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 5, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 6, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 6, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 7, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 1));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 2));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 6));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 10));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 11));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 12));
-        mBlocks.add(new Bloc(Type.HOLE, 7, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 8, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 8, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 8, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 8, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 9, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 9, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 9, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 9, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 10, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 10, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 10, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 10, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 11, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 11, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 11, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 11, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 12, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 1));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 2));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 3));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 4));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 12, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 13, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 13, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 13, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 14, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 14, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 14, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 15, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 15, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 15, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 16, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 4));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 6));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 7));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 16, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 17, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 17, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 18, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 18, 13));
-
-        mBlocks.add(new Bloc(Type.HOLE, 19, 0));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 1));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 2));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 3));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 4));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 5));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 6));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 7));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 8));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 9));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 10));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 11));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 12));
-        mBlocks.add(new Bloc(Type.HOLE, 19, 13));
-
-        Bloc b = new Bloc(Type.START, 2, 2);
-        mBall.setInitialRectangle(new RectF(b.getRectangle()));
-        mBlocks.add(b);
-
-        mBlocks.add(new Bloc(Type.END, 8, 11));
-
-        return mBlocks;
+    public void release() {
+        if(mPreloader != null)
+            mPreloader.shutdown();
     }
 }
@@ -0,0 +1,117 @@
+package dimitri_dessus.labymotion.engines;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+
+import dimitri_dessus.labymotion.R;
+
+/**
+ * Sounds of the game events, decoded once when the game starts.
+ *
+ * Sounds are loaded in a SoundPool, which decodes them in memory in the
+ * background and plays them on a low latency stream. Playing a sound is then
+ * a call into the pool, without decoding, blocking or allocating, and at most
+ * MAX_STREAMS sounds play at once, the oldest one being stopped for a new one.
+ * A sound asked before it is loaded is not played.
+ */
+
+public class SoundGameEngine implements SoundPool.OnLoadCompleteListener {
+
+    // Sounds of the game
+    public static final int WIN     = 0;
+    public static final int LOOSE   = 1;
+    public static final int WALKING = 2;
+
+    // Resource of each sound
+    private static final int[] RESOURCES = { R.raw.win, R.raw.loose, R.raw.walking };
+
+    // Sounds playing at the same time
+    private static final int MAX_STREAMS = 2;
+
+    private final SoundPool mPool;
+
+    // Sample of each sound in the pool, and whether it is loaded
+    private final int[] mSamples = new int[RESOURCES.length];
+    private final boolean[] mLoaded = new boolean[RESOURCES.length];
+
+    /**
+     * Constructor of SoundGameEngine class, start loading every sound.
+     *
+     * @param pContext Context of the activity.
+     * @see SoundPool
+     */
+    public SoundGameEngine(Context pContext) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            AudioAttributes attributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_GAME)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .build();
+            mPool = new SoundPool.Builder()
+                    .setMaxStreams(MAX_STREAMS)
+                    .setAudioAttributes(attributes)
+                    .build();
+        } else {
+            mPool = createLegacyPool();
+        }
+
+        mPool.setOnLoadCompleteListener(this);
+        for(int i = 0; i < RESOURCES.length; i++)
+            mSamples[i] = mPool.load(pContext, RESOURCES[i], 1);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static SoundPool createLegacyPool() {
+        return new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+    }
+
+    /**
+     * Event triggered when a sound is decoded, on the main thread.
+     *
+     * @param pPool Pool of the sound.
+     * @param pSample Sample of the sound.
+     * @param pStatus 0 if the sound was decoded.
+     * @see SoundPool
+     */
+    @Override
+    public void onLoadComplete(SoundPool pPool, int pSample, int pStatus) {
+        for(int i = 0; i < mSamples.length; i++) {
+            if(mSamples[i] == pSample)
+                mLoaded[i] = pStatus == 0;
+        }
+    }
+
+    /**
+     * Play a sound.
+     * Must be called from the main thread.
+     *
+     * @param pSound WIN, LOOSE or WALKING.
+     */
+    public void play(int pSound) {
+        if(mLoaded[pSound])
+            mPool.play(mSamples[pSound], 1.0f, 1.0f, 1, 0, 1.0f);
+    }
+
+    /**
+     * Pause sounds playing, when the game goes in background.
+     */
+    public void pause() {
+        mPool.autoPause();
+    }
+
+    /**
+     * Resume sounds paused by pause().
+     */
+    public void resume() {
+        mPool.autoResume();
+    }
+
+    /**
+     * Free the decoded sounds, the engine can't be used anymore.
+     */
+    public void release() {
+        mPool.release();
+    }
+}
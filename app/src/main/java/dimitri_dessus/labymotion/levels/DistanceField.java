@@ -0,0 +1,235 @@
+package dimitri_dessus.labymotion.levels;
+
+import java.util.Arrays;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Cost to reach the END bloc from every free cell of a labyrinth, with the
+ * next cell to go to, computed once per level.
+ *
+ * Costs come from a Dijkstra search started from the END blocs, moving from a
+ * cell to one of its 4 neighbours, holes and walls can't be crossed. Cells next
+ * to a hole cost more to cross, so paths keep to the middle of wide corridors,
+ * where the ball has room on both sides.
+ *
+ * Costs and next cells are stored in primitive arrays, so asking the way from
+ * any cell is a single read and can be done on every physics step.
+ */
+
+public class DistanceField {
+
+    // Cost of a cell with no hole around, and extra cost of a cell next to a hole
+    public static final int STEP_COST       = 1;
+    public static final int NEAR_HOLE_COST  = 4;
+
+    // Cost of a cell from which END can't be reached
+    public static final int UNREACHABLE     = -1;
+
+    private final int mColumns;
+    private final int mRows;
+    private final int[] mCosts;
+    private final int[] mNext;
+
+    private DistanceField(int pColumns, int pRows, int[] pCosts, int[] pNext) {
+        this.mColumns = pColumns;
+        this.mRows = pRows;
+        this.mCosts = pCosts;
+        this.mNext = pNext;
+    }
+
+    /**
+     * Compute the field of a labyrinth.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @return Field of the labyrinth, every cell is UNREACHABLE if there is no END bloc.
+     * @see BlockStore
+     */
+    public static DistanceField compute(BlockStore pBlocks) {
+        byte[] cells = pBlocks.getCells();
+        int columns = pBlocks.getColumns();
+        int rows = pBlocks.getRows();
+
+        // Cost of going through each cell
+        byte[] through = new byte[cells.length];
+        for(int i = 0; i < cells.length; i++)
+            through[i] = (byte) cellCost(pBlocks, i % columns, i / columns);
+
+        int[] costs = new int[cells.length];
+        Arrays.fill(costs, Integer.MAX_VALUE);
+
+        // Heap of (cost << 32 | cell), a cell is pushed again when its cost drops
+        long[] heap = new long[Math.max(cells.length, 1)];
+        int size = 0;
+        for(int i = 0; i < cells.length; i++) {
+            if(cells[i] == BlockStore.END) {
+                costs[i] = 0;
+                if(size == heap.length)
+                    heap = Arrays.copyOf(heap, size * 2);
+                size = push(heap, size, i);
+            }
+        }
+
+        while(size > 0) {
+            long top = heap[0];
+            size = pop(heap, size);
+            int cell = (int) top;
+            int cost = (int) (top >>> 32);
+            if(cost != costs[cell])
+                continue;
+
+            // Going from a neighbour to this cell costs this cell
+            int x = cell % columns;
+            int next = cost + through[cell];
+            for(int d = 0; d < 4; d++) {
+                int neighbour = neighbour(cell, x, d, columns, cells.length);
+                if(neighbour == -1 || !isFree(cells[neighbour]) || next >= costs[neighbour])
+                    continue;
+
+                costs[neighbour] = next;
+                if(size == heap.length)
+                    heap = Arrays.copyOf(heap, size * 2);
+                size = push(heap, size, ((long) next << 32) | neighbour);
+            }
+        }
+
+        // Next cell is the neighbour the cost comes from, first one in neighbour order on a tie
+        int[] nexts = new int[cells.length];
+        for(int cell = 0; cell < cells.length; cell++) {
+            nexts[cell] = -1;
+            if(costs[cell] == 0 || costs[cell] == Integer.MAX_VALUE)
+                continue;
+
+            int x = cell % columns;
+            for(int d = 0; d < 4; d++) {
+                int neighbour = neighbour(cell, x, d, columns, cells.length);
+                if(neighbour != -1 && costs[neighbour] != Integer.MAX_VALUE
+                        && costs[neighbour] + through[neighbour] == costs[cell]) {
+                    nexts[cell] = neighbour;
+                    break;
+                }
+            }
+        }
+        for(int cell = 0; cell < cells.length; cell++) {
+            if(costs[cell] == Integer.MAX_VALUE)
+                costs[cell] = UNREACHABLE;
+        }
+
+        return new DistanceField(columns, rows, costs, nexts);
+    }
+
+    /**
+     * Getter of the cost to reach END from a cell
+     *
+     * @param pX Position of the cell in the X axis.
+     * @param pY Position of the cell in the Y axis.
+     * @return Cost of the cheapest path, 0 on END, UNREACHABLE if blocked or out of the grid.
+     */
+    public int getCost(int pX, int pY) {
+        if(pX < 0 || pY < 0 || pX >= mColumns || pY >= mRows)
+            return UNREACHABLE;
+        return mCosts[pY * mColumns + pX];
+    }
+
+    /**
+     * Getter of the next cell toward END
+     *
+     * @param pX Position of the cell in the X axis.
+     * @param pY Position of the cell in the Y axis.
+     * @return Index of the next cell (y * columns + x), -1 on END, if blocked or out of the grid.
+     */
+    public int getNext(int pX, int pY) {
+        if(pX < 0 || pY < 0 || pX >= mColumns || pY >= mRows)
+            return -1;
+        return mNext[pY * mColumns + pX];
+    }
+
+    /**
+     * Getter of the number of cells in the X axis
+     *
+     * @return Number of columns.
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Getter of the number of cells in the Y axis
+     *
+     * @return Number of rows.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    private static boolean isFree(byte pType) {
+        return pType != BlockStore.HOLE && pType != BlockStore.WALL;
+    }
+
+    /**
+     * Cost of going through a cell, higher if one of its 8 neighbours is a hole.
+     */
+    private static int cellCost(BlockStore pBlocks, int pX, int pY) {
+        for(int y = pY - 1; y <= pY + 1; y++) {
+            for(int x = pX - 1; x <= pX + 1; x++) {
+                if(pBlocks.getCell(x, y) == BlockStore.HOLE)
+                    return STEP_COST + NEAR_HOLE_COST;
+            }
+        }
+        return STEP_COST;
+    }
+
+    /**
+     * Index of a neighbour cell: 0 left, 1 right, 2 up, 3 down.
+     *
+     * @return Index of the neighbour, -1 if out of the grid.
+     */
+    private static int neighbour(int pCell, int pX, int pDirection, int pColumns, int pLength) {
+        switch(pDirection) {
+            case 0:
+                return pX > 0 ? pCell - 1 : -1;
+            case 1:
+                return pX < pColumns - 1 ? pCell + 1 : -1;
+            case 2:
+                return pCell >= pColumns ? pCell - pColumns : -1;
+            default:
+                return pCell + pColumns < pLength ? pCell + pColumns : -1;
+        }
+    }
+
+    /**
+     * Add a value to the binary heap.
+     *
+     * @return New size of the heap.
+     */
+    private static int push(long[] pHeap, int pSize, long pValue) {
+        int i = pSize;
+        while(i > 0 && pHeap[(i - 1) / 2] > pValue) {
+            pHeap[i] = pHeap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        pHeap[i] = pValue;
+        return pSize + 1;
+    }
+
+    /**
+     * Remove the smallest value of the binary heap.
+     *
+     * @return New size of the heap.
+     */
+    private static int pop(long[] pHeap, int pSize) {
+        long last = pHeap[--pSize];
+        int i = 0;
+        while(2 * i + 1 < pSize) {
+            int child = 2 * i + 1;
+            if(child + 1 < pSize && pHeap[child + 1] < pHeap[child])
+                child++;
+            if(pHeap[child] >= last)
+                break;
+            pHeap[i] = pHeap[child];
+            i = child;
+        }
+        pHeap[i] = last;
+        return pSize;
+    }
+}
@@ -0,0 +1,195 @@
+package dimitri_dessus.labymotion.levels;
+
+import java.util.Arrays;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Check that a labyrinth can be played and score its difficulty.
+ *
+ * A labyrinth is playable when it has a START bloc, at least one END bloc,
+ * and every END bloc can be reached from START. The difficulty grows with the
+ * length of the shortest path to END and the share of its cells next to a hole,
+ * and drops with the width of the corridors it goes through:
+ * difficulty = length * (1 + NEAR_HOLE_WEIGHT * near holes / cells) / mean width.
+ *
+ * Search arrays are kept from one check to another, so checking many levels of
+ * the same size allocates nothing. Reused by one thread.
+ */
+
+public class LevelCheck {
+
+    // Problems found, as bit flags
+    public static final int NO_START            = 1;
+    public static final int NO_END              = 2;
+    public static final int UNREACHABLE_END     = 4;
+
+    // Weight of the path cells next to a hole in the difficulty
+    public static final float NEAR_HOLE_WEIGHT  = 2.0f;
+
+    // Search arrays: cell the search came from plus one, 0 when not reached yet
+    private int[] mFrom = new int[0];
+    private int[] mQueue = new int[0];
+
+    // Result of the last check
+    private int mProblems;
+    private int mPathLength;
+    private int mNearHoles;
+    private float mMeanWidth;
+    private float mDifficulty;
+
+    /**
+     * Check a labyrinth, results are read with the getters.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @return True if the labyrinth can be played.
+     * @see BlockStore
+     */
+    public boolean check(BlockStore pBlocks) {
+        byte[] cells = pBlocks.getCells();
+        int columns = pBlocks.getColumns();
+        mProblems = 0;
+        mPathLength = -1;
+        mNearHoles = 0;
+        mMeanWidth = 0;
+        mDifficulty = 0;
+
+        int start = pBlocks.indexOf(BlockStore.START);
+        if(start == -1)
+            mProblems |= NO_START;
+        if(pBlocks.indexOf(BlockStore.END) == -1)
+            mProblems |= NO_END;
+        if(mProblems != 0)
+            return false;
+
+        if(mFrom.length < cells.length) {
+            mFrom = new int[cells.length];
+            mQueue = new int[cells.length];
+        } else {
+            Arrays.fill(mFrom, 0, cells.length, 0);
+        }
+
+        // Search the whole labyrinth with the rules of the solver, to find unreachable ENDs too
+        int end = MazeSolver.search(pBlocks, start, mFrom, mQueue, false);
+
+        for(int i = 0; i < cells.length; i++) {
+            if(cells[i] == BlockStore.END && mFrom[i] == 0) {
+                mProblems |= UNREACHABLE_END;
+                break;
+            }
+        }
+        if(end == -1)
+            return false;
+
+        // Walk the path back from END to START
+        int length = 0;
+        long width = 0;
+        for(int cell = end; ; cell = mFrom[cell] - 1) {
+            int x = cell % columns;
+            int y = cell / columns;
+            width += Math.min(run(pBlocks, x, y, 1, 0), run(pBlocks, x, y, 0, 1));
+            if(nearHole(pBlocks, x, y))
+                mNearHoles++;
+            if(cell == start)
+                break;
+            length++;
+        }
+
+        mPathLength = length;
+        mMeanWidth = (float) width / (length + 1);
+        mDifficulty = length * (1 + NEAR_HOLE_WEIGHT * mNearHoles / (length + 1)) / mMeanWidth;
+        return mProblems == 0;
+    }
+
+    /**
+     * Getter of the problems found by the last check
+     *
+     * @return Problems as NO_START, NO_END and UNREACHABLE_END flags, 0 if none.
+     */
+    public int getProblems() {
+        return mProblems;
+    }
+
+    /**
+     * Getter of the shortest path length of the last check
+     *
+     * @return Number of moves from START to the closest END, -1 if none can be reached.
+     */
+    public int getPathLength() {
+        return mPathLength;
+    }
+
+    /**
+     * Getter of the number of path cells next to a hole
+     *
+     * @return Cells of the path with a hole in one of their 8 neighbours.
+     */
+    public int getNearHoles() {
+        return mNearHoles;
+    }
+
+    /**
+     * Getter of the mean corridor width along the path
+     *
+     * @return Mean in cells of the shortest free run, in row or column, through each path cell.
+     */
+    public float getMeanWidth() {
+        return mMeanWidth;
+    }
+
+    /**
+     * Getter of the difficulty of the last check
+     *
+     * @return Difficulty score, 0 if no path.
+     */
+    public float getDifficulty() {
+        return mDifficulty;
+    }
+
+    /**
+     * Describe problems for a report or an error message.
+     *
+     * @param pProblems Problem flags.
+     * @return Names of the problems, "ok" if none.
+     */
+    public static String describe(int pProblems) {
+        if(pProblems == 0)
+            return "ok";
+
+        StringBuilder builder = new StringBuilder();
+        if((pProblems & NO_START) != 0)
+            builder.append("no start");
+        if((pProblems & NO_END) != 0)
+            builder.append(builder.length() > 0 ? ", " : "").append("no end");
+        if((pProblems & UNREACHABLE_END) != 0)
+            builder.append(builder.length() > 0 ? ", " : "").append("unreachable end");
+        return builder.toString();
+    }
+
+    /**
+     * Number of free cells in a row or column through a cell, the cell included.
+     */
+    private static int run(BlockStore pBlocks, int pX, int pY, int pStepX, int pStepY) {
+        int run = 1;
+        for(int x = pX + pStepX, y = pY + pStepY; isFree(pBlocks, x, y); x += pStepX, y += pStepY)
+            run++;
+        for(int x = pX - pStepX, y = pY - pStepY; isFree(pBlocks, x, y); x -= pStepX, y -= pStepY)
+            run++;
+        return run;
+    }
+
+    private static boolean isFree(BlockStore pBlocks, int pX, int pY) {
+        return pX >= 0 && pY >= 0 && pX < pBlocks.getColumns() && pY < pBlocks.getRows()
+                && MazeSolver.isFree(pBlocks.getCell(pX, pY));
+    }
+
+    private static boolean nearHole(BlockStore pBlocks, int pX, int pY) {
+        for(int y = pY - 1; y <= pY + 1; y++) {
+            for(int x = pX - 1; x <= pX + 1; x++) {
+                if(pBlocks.getCell(x, y) == BlockStore.HOLE)
+                    return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,238 @@
+package dimitri_dessus.labymotion.levels;
+
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Read and write level files.
+ *
+ * Two formats are supported:
+ * - ASCII grid, one line per row: '#' hole, 'W' wall, 'S' start, 'E' end, any other character is empty.
+ * - Packed binary: "LBYM" magic, version byte, width and height as unsigned shorts,
+ *   then the cells row by row (0 empty, 1 hole, 2 start, 3 end, 4 wall), on 2 bits
+ *   in version 1 and on 4 bits in version 2. Levels are written in version 1 unless
+ *   they have walls, so they stay readable by older versions of the game.
+ *
+ * Files are streamed straight into the byte grid of a BlockStore, the cell values
+ * of the binary format being the same as the BlockStore types.
+ */
+
+public class LevelLoader {
+
+    // Header of binary level files
+    private static final byte[] MAGIC   = { 'L', 'B', 'Y', 'M' };
+    private static final int VERSION    = 1;
+    private static final int VERSION_WALLS = 2;
+
+    // Max cells of a level, 16 MB of blocs, checked before allocating the grid
+    private static final long MAX_CELLS = 4096L * 4096L;
+
+    private LevelLoader() { }
+
+    /**
+     * Read a level, ASCII or binary format is detected from the header.
+     *
+     * @param pInput Stream of the level file, not closed.
+     * @return Blocs of the level.
+     * @throws IOException If the stream can't be read or the level is malformed.
+     * @see BlockStore
+     */
+    public static BlockStore load(InputStream pInput) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(pInput);
+
+        // Look for binary header
+        input.mark(MAGIC.length);
+        boolean binary = true;
+        for(byte b : MAGIC) {
+            if(input.read() != b) {
+                binary = false;
+                break;
+            }
+        }
+
+        if(binary)
+            return loadBinary(input);
+
+        input.reset();
+        return loadAscii(input);
+    }
+
+    /**
+     * Read a level in ASCII format.
+     * Size of the grid is only known at the end of the file, so cells are
+     * written in a buffer as wide as the longest line seen so far.
+     *
+     * @param pInput Stream of the level file.
+     * @return Blocs of the level.
+     * @throws IOException If the stream can't be read.
+     */
+    private static BlockStore loadAscii(InputStream pInput) throws IOException {
+        byte[] cells = new byte[256];
+        int columns = 0;
+        int rows = 0;
+        int x = 0;
+        int y = 0;
+        int c;
+
+        while((c = pInput.read()) != -1) {
+            byte type;
+            switch(c) {
+                case '\n':
+                    x = 0;
+                    y++;
+                    continue;
+                case '\r':
+                    continue;
+                case '#':
+                    type = BlockStore.HOLE;
+                    break;
+                case 'S':
+                    type = BlockStore.START;
+                    break;
+                case 'E':
+                    type = BlockStore.END;
+                    break;
+                case 'W':
+                    type = BlockStore.WALL;
+                    break;
+                default:
+                    type = BlockStore.EMPTY;
+                    break;
+            }
+
+            // Widen the grid, moving rows already read
+            if(x >= columns) {
+                int newColumns = Math.max(x + 1, columns * 2);
+                byte[] widened = new byte[Math.max(newColumns * (y + 1), cells.length)];
+                for(int row = 0; row < rows; row++)
+                    System.arraycopy(cells, row * columns, widened, row * newColumns, columns);
+                cells = widened;
+                columns = newColumns;
+            }
+
+            if((y + 1) * columns > cells.length)
+                cells = Arrays.copyOf(cells, Math.max(cells.length * 2, (y + 1) * columns));
+
+            if(type != BlockStore.EMPTY) {
+                cells[y * columns + x] = type;
+                rows = y + 1;
+            }
+            x++;
+        }
+
+        // Trim to the last non empty column
+        int width = 0;
+        for(int row = 0; row < rows; row++) {
+            for(int col = columns - 1; col >= width; col--) {
+                if(cells[row * columns + col] != BlockStore.EMPTY) {
+                    width = col + 1;
+                    break;
+                }
+            }
+        }
+
+        byte[] trimmed = new byte[width * rows];
+        for(int row = 0; row < rows; row++)
+            System.arraycopy(cells, row * columns, trimmed, row * width, width);
+
+        return new BlockStore(width, rows, trimmed);
+    }
+
+    /**
+     * Read a level in binary format, header magic already consumed.
+     *
+     * @param pInput Stream of the level file.
+     * @return Blocs of the level.
+     * @throws IOException If the stream can't be read or the level is malformed.
+     */
+    private static BlockStore loadBinary(InputStream pInput) throws IOException {
+        int version = readByte(pInput);
+        if(version != VERSION && version != VERSION_WALLS)
+            throw new IOException("Unsupported level version " + version);
+        int bits = version == VERSION ? 2 : 4;
+        int perByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+
+        int width = (readByte(pInput) << 8) | readByte(pInput);
+        int height = (readByte(pInput) << 8) | readByte(pInput);
+        if(width == 0 || height == 0)
+            throw new IOException("Level has no cells: " + width + "x" + height);
+        if((long) width * height > MAX_CELLS)
+            throw new IOException("Level is too big: " + width + "x" + height);
+
+        byte[] cells = new byte[width * height];
+        int packed = 0;
+        for(int i = 0; i < cells.length; i++) {
+            // First cell in high bits
+            if(i % perByte == 0)
+                packed = readByte(pInput);
+            int type = (packed >> (8 - bits * (i % perByte + 1))) & mask;
+            if(type > BlockStore.WALL)
+                throw new IOException("Unknown bloc type " + type);
+            cells[i] = (byte) type;
+        }
+
+        return new BlockStore(width, height, cells);
+    }
+
+    /**
+     * Write a level in binary format.
+     *
+     * @param pBlocks Blocs of the level.
+     * @param pOutput Stream to write, not closed.
+     * @throws IOException If the stream can't be written or the level is too big.
+     * @see BlockStore
+     */
+    public static void write(BlockStore pBlocks, OutputStream pOutput) throws IOException {
+        int width = pBlocks.getColumns();
+        int height = pBlocks.getRows();
+        if(width > 0xFFFF || height > 0xFFFF || (long) width * height > MAX_CELLS)
+            throw new IOException("Level is too big: " + width + "x" + height);
+
+        // Walls don't fit on 2 bits
+        byte[] cells = pBlocks.getCells();
+        int version = VERSION;
+        for(byte cell : cells) {
+            if(cell == BlockStore.WALL) {
+                version = VERSION_WALLS;
+                break;
+            }
+        }
+        int bits = version == VERSION ? 2 : 4;
+        int perByte = 8 / bits;
+
+        // Pack cells, first cell in high bits
+        byte[] packed = new byte[(cells.length + perByte - 1) / perByte];
+        for(int i = 0; i < cells.length; i++)
+            packed[i / perByte] |= cells[i] << (8 - bits * (i % perByte + 1));
+
+        DataOutputStream output = new DataOutputStream(pOutput);
+        output.write(MAGIC);
+        output.writeByte(version);
+        output.writeShort(width);
+        output.writeShort(height);
+        output.write(packed);
+        output.flush();
+    }
+
+    /**
+     * Read one byte, failing at end of stream.
+     *
+     * @param pInput Stream to read.
+     * @return Unsigned byte value.
+     * @throws IOException If the stream ended.
+     */
+    private static int readByte(InputStream pInput) throws IOException {
+        int b = pInput.read();
+        if(b == -1)
+            throw new EOFException("Truncated level file");
+        return b;
+    }
+}
@@ -0,0 +1,142 @@
+package dimitri_dessus.labymotion.levels;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Load and prepare a level on a background thread while another one is played,
+ * so the next level is ready when the player gets to it.
+ *
+ * One level is prepared at a time, asking for another one cancels it. Taking a
+ * level that is not ready yet waits for it, or prepares it on the spot if it
+ * was not asked for. Used by one thread, usually the main thread.
+ *
+ * @see PreparedLevel
+ */
+
+public class LevelPreloader {
+
+    /**
+     * Levels to load.
+     */
+    public interface Source {
+        /**
+         * Load blocs of a level.
+         *
+         * @param pIndex Index of the level.
+         * @return Blocs of the level.
+         * @throws IOException If the level can't be read.
+         */
+        BlockStore load(int pIndex) throws IOException;
+    }
+
+    private final Source mSource;
+    private final ExecutorService mExecutor;
+
+    // Level being prepared, -1 if none
+    private int mPending = -1;
+    private Future<PreparedLevel> mFuture = null;
+
+    /**
+     * Constructor of LevelPreloader class, with a low priority background thread.
+     *
+     * @param pSource Levels to load.
+     */
+    public LevelPreloader(Source pSource) {
+        this.mSource = pSource;
+        this.mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable pRunnable) {
+                Thread thread = new Thread(pRunnable, "LevelPreloader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start preparing a level in the background.
+     *
+     * @param pIndex Index of the level.
+     */
+    public void prepare(final int pIndex) {
+        if(pIndex == mPending)
+            return;
+        if(mFuture != null)
+            mFuture.cancel(false);
+
+        mPending = pIndex;
+        mFuture = mExecutor.submit(new Callable<PreparedLevel>() {
+            @Override
+            public PreparedLevel call() throws IOException {
+                return PreparedLevel.prepare(pIndex, mSource.load(pIndex));
+            }
+        });
+    }
+
+    /**
+     * Getter of a prepared level, waiting for it if needed.
+     *
+     * @param pIndex Index of the level.
+     * @return Level ready to be played.
+     * @throws IOException If the level can't be read.
+     * @throws IllegalStateException If the level can't be played.
+     */
+    public PreparedLevel take(int pIndex) throws IOException {
+        prepare(pIndex);
+        Future<PreparedLevel> future = mFuture;
+        mPending = -1;
+        mFuture = null;
+
+        // Level is needed now, don't give up on an interrupt
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if(cause instanceof IOException)
+                        throw (IOException) cause;
+                    if(cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new IllegalStateException("Unable to prepare level " + pIndex, cause);
+                }
+            }
+        } finally {
+            if(interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Check if a level is prepared and can be taken without waiting.
+     *
+     * @param pIndex Index of the level.
+     * @return True if the level is ready.
+     */
+    public boolean isReady(int pIndex) {
+        return pIndex == mPending && mFuture.isDone();
+    }
+
+    /**
+     * Stop the background thread, levels can't be prepared anymore.
+     */
+    public void shutdown() {
+        if(mFuture != null)
+            mFuture.cancel(false);
+        mPending = -1;
+        mFuture = null;
+        mExecutor.shutdown();
+    }
+}
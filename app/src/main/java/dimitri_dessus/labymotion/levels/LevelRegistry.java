@@ -0,0 +1,75 @@
+package dimitri_dessus.labymotion.levels;
+
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * List of the levels shipped in the assets "levels" folder.
+ * Levels are sorted by file name, so "001.txt" is the first one.
+ */
+
+public class LevelRegistry implements LevelPreloader.Source {
+
+    // Folder of levels in assets
+    private static final String LEVELS_DIR = "levels";
+
+    private final AssetManager mAssets;
+    private final String[] mNames;
+
+    /**
+     * Constructor of LevelRegistry class.
+     * Only the list of files is read, levels are loaded on demand.
+     *
+     * @param pAssets Asset manager of the application.
+     * @throws IOException If the levels folder can't be listed.
+     * @see AssetManager
+     */
+    public LevelRegistry(AssetManager pAssets) throws IOException {
+        this.mAssets = pAssets;
+        String[] names = pAssets.list(LEVELS_DIR);
+        this.mNames = names != null ? names : new String[0];
+        Arrays.sort(mNames);
+    }
+
+    /**
+     * Getter of the number of levels
+     *
+     * @return Number of levels available.
+     */
+    public int getCount() {
+        return mNames.length;
+    }
+
+    /**
+     * Getter of a level file name
+     *
+     * @param pIndex Index of the level.
+     * @return File name of the level.
+     */
+    public String getName(int pIndex) {
+        return mNames[pIndex];
+    }
+
+    /**
+     * Load blocs of a level.
+     *
+     * @param pIndex Index of the level.
+     * @return Blocs of the level.
+     * @throws IOException If the level can't be read.
+     * @see LevelLoader
+     */
+    @Override
+    public BlockStore load(int pIndex) throws IOException {
+        InputStream input = mAssets.open(LEVELS_DIR + "/" + mNames[pIndex]);
+        try {
+            return LevelLoader.load(input);
+        } finally {
+            input.close();
+        }
+    }
+}
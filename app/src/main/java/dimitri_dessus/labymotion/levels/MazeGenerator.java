@@ -0,0 +1,125 @@
+package dimitri_dessus.labymotion.levels;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Generate random labyrinths with a recursive backtracker.
+ *
+ * The grid is split in rooms of corridor x corridor cells separated by walls of
+ * holes one cell thick. The backtracker opens walls between rooms until every
+ * room is reached, so the maze is a tree and START is always connected to END.
+ * START is put in the top left room and END in the room farthest from it.
+ *
+ * The same seed always gives the same maze.
+ */
+
+public class MazeGenerator {
+
+    // Directions between rooms
+    private static final int[] DX = { 1, 0, -1, 0 };
+    private static final int[] DY = { 0, 1, 0, -1 };
+
+    private MazeGenerator() { }
+
+    /**
+     * Generate a labyrinth. Cells not used by rooms (right and bottom borders
+     * when the size doesn't fit) are holes.
+     *
+     * @param pColumns Number of cells in the X axis.
+     * @param pRows Number of cells in the Y axis.
+     * @param pCorridor Width of corridors in cells.
+     * @param pSeed Seed of the random generator.
+     * @return Blocs of the labyrinth.
+     * @see BlockStore
+     */
+    public static BlockStore generate(int pColumns, int pRows, int pCorridor, long pSeed) {
+        int step = pCorridor + 1;
+        int roomColumns = (pColumns - 1) / step;
+        int roomRows = (pRows - 1) / step;
+        if(pCorridor < 1 || roomColumns < 1 || roomRows < 1 || roomColumns * roomRows < 2)
+            throw new IllegalArgumentException("Grid " + pColumns + "x" + pRows
+                    + " too small for corridors of " + pCorridor);
+
+        // Everything is a hole until carved
+        BlockStore blocks = new BlockStore(pColumns, pRows);
+        byte[] cells = blocks.getCells();
+        Arrays.fill(cells, BlockStore.HOLE);
+
+        Random random = new Random(pSeed);
+        int rooms = roomColumns * roomRows;
+        boolean[] visited = new boolean[rooms];
+        int[] stack = new int[rooms];
+        int[] directions = new int[4];
+        int size = 0;
+        int farthest = 0;
+        int farthestDepth = 0;
+
+        stack[size++] = 0;
+        visited[0] = true;
+        carve(blocks, 0, 0, pCorridor, pCorridor);
+
+        while(size > 0) {
+            int room = stack[size - 1];
+            int x = room % roomColumns;
+            int y = room / roomColumns;
+
+            // Pick a random unvisited neighbour
+            int count = 0;
+            for(int d = 0; d < 4; d++) {
+                int nX = x + DX[d];
+                int nY = y + DY[d];
+                if(nX >= 0 && nY >= 0 && nX < roomColumns && nY < roomRows && !visited[nY * roomColumns + nX])
+                    directions[count++] = d;
+            }
+
+            if(count == 0) {
+                size--;
+                continue;
+            }
+
+            int d = directions[random.nextInt(count)];
+            int nX = x + DX[d];
+            int nY = y + DY[d];
+            int next = nY * roomColumns + nX;
+            visited[next] = true;
+            stack[size++] = next;
+
+            // Open the room and the wall between both rooms
+            carve(blocks, nX * step, nY * step, pCorridor, pCorridor);
+            if(DX[d] != 0)
+                carve(blocks, Math.max(x, nX) * step - 1, y * step, 1, pCorridor);
+            else
+                carve(blocks, x * step, Math.max(y, nY) * step - 1, pCorridor, 1);
+
+            // In a tree the depth in the stack is the distance to the start
+            if(size > farthestDepth) {
+                farthestDepth = size;
+                farthest = next;
+            }
+        }
+
+        blocks.setCell(1, 1, BlockStore.START);
+        blocks.setCell((farthest % roomColumns) * step + 1, (farthest / roomColumns) * step + 1, BlockStore.END);
+
+        return blocks;
+    }
+
+    /**
+     * Empty an area of the grid, shifted by the outer wall.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @param pX Left of the area, outer wall excluded.
+     * @param pY Top of the area, outer wall excluded.
+     * @param pWidth Width of the area.
+     * @param pHeight Height of the area.
+     */
+    private static void carve(BlockStore pBlocks, int pX, int pY, int pWidth, int pHeight) {
+        for(int y = 0; y < pHeight; y++) {
+            for(int x = 0; x < pWidth; x++)
+                pBlocks.setCell(pX + x + 1, pY + y + 1, BlockStore.EMPTY);
+        }
+    }
+}
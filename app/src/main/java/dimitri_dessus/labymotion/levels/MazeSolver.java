@@ -0,0 +1,101 @@
+package dimitri_dessus.labymotion.levels;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Check labyrinths by a breadth first search on free cells.
+ * The ball moves from a cell to one of its 4 neighbours, holes and walls can't be crossed.
+ */
+
+public class MazeSolver {
+
+    private MazeSolver() { }
+
+    /**
+     * Length of the shortest path from START to END.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @return Number of moves from START to END, -1 if END can't be reached or is missing.
+     * @see BlockStore
+     */
+    public static int pathLength(BlockStore pBlocks) {
+        int start = pBlocks.indexOf(BlockStore.START);
+        if(start == -1)
+            return -1;
+
+        int[] from = new int[pBlocks.getCells().length];
+        int end = search(pBlocks, start, from, new int[from.length], true);
+        if(end == -1)
+            return -1;
+
+        int length = 0;
+        for(int cell = end; cell != start; cell = from[cell] - 1)
+            length++;
+        return length;
+    }
+
+    /**
+     * Breadth first search from a cell, the first END reached is the closest one.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @param pStart Index of the first cell.
+     * @param pFrom Cell each cell was reached from plus one, 0 when not reached. Must be 0 on input, at least as long as the cells.
+     * @param pQueue Queue of the search, at least as long as the cells.
+     * @param pStopAtEnd True to stop on the first END, false to reach every cell that can be.
+     * @return Index of the closest END, -1 if none can be reached.
+     */
+    static int search(BlockStore pBlocks, int pStart, int[] pFrom, int[] pQueue, boolean pStopAtEnd) {
+        byte[] cells = pBlocks.getCells();
+        int columns = pBlocks.getColumns();
+        int head = 0;
+        int tail = 0;
+        int end = -1;
+        pQueue[tail++] = pStart;
+        pFrom[pStart] = pStart + 1;
+
+        while(head < tail) {
+            int cell = pQueue[head++];
+            if(end == -1 && cells[cell] == BlockStore.END) {
+                end = cell;
+                if(pStopAtEnd)
+                    break;
+            }
+
+            int x = cell % columns;
+            if(x > 0)
+                tail = visit(cells, pFrom, pQueue, tail, cell, cell - 1);
+            if(x < columns - 1)
+                tail = visit(cells, pFrom, pQueue, tail, cell, cell + 1);
+            if(cell >= columns)
+                tail = visit(cells, pFrom, pQueue, tail, cell, cell - columns);
+            if(cell + columns < cells.length)
+                tail = visit(cells, pFrom, pQueue, tail, cell, cell + columns);
+        }
+
+        return end;
+    }
+
+    /**
+     * Check if the ball can roll on a bloc.
+     *
+     * @param pType Type of the bloc.
+     * @return False for holes and walls.
+     */
+    static boolean isFree(byte pType) {
+        return pType != BlockStore.HOLE && pType != BlockStore.WALL;
+    }
+
+    /**
+     * Queue a neighbour cell if free and not reached yet.
+     *
+     * @return New tail of the queue.
+     */
+    private static int visit(byte[] pCells, int[] pFrom, int[] pQueue, int pTail, int pCell, int pTo) {
+        if(pFrom[pTo] != 0 || !isFree(pCells[pTo]))
+            return pTail;
+
+        pFrom[pTo] = pCell + 1;
+        pQueue[pTail] = pTo;
+        return pTail + 1;
+    }
+}
@@ -0,0 +1,89 @@
+package dimitri_dessus.labymotion.levels;
+
+import dimitri_dessus.labymotion.models.BlockRects;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Level ready to be played: its blocs, checked, with everything the engines
+ * compute once per level, the way to END for the physics and the blocs merged
+ * in rectangles for drawing.
+ *
+ * Preparing a level walks the whole labyrinth several times, so it can be done
+ * on a background thread while another level is played. A prepared level never
+ * changes, so it can then be handed to the engines in one reference swap.
+ *
+ * @see LevelPreloader
+ */
+
+public class PreparedLevel {
+
+    // Cells in each side of the tiles the blocs are drawn in
+    public static final int TILE_CELLS = 4;
+
+    private final int mIndex;
+    private final BlockStore mBlocks;
+    private final DistanceField mField;
+    private final BlockRects mRects;
+
+    private PreparedLevel(int pIndex, BlockStore pBlocks, DistanceField pField, BlockRects pRects) {
+        this.mIndex = pIndex;
+        this.mBlocks = pBlocks;
+        this.mField = pField;
+        this.mRects = pRects;
+    }
+
+    /**
+     * Check a level and compute its data.
+     *
+     * @param pIndex Index of the level, -1 if it doesn't come from the registry.
+     * @param pBlocks Blocs of the level, must not change afterwards.
+     * @return Level ready to be played.
+     * @throws IllegalStateException If the level can't be played.
+     * @see LevelCheck
+     */
+    public static PreparedLevel prepare(int pIndex, BlockStore pBlocks) {
+        LevelCheck check = new LevelCheck();
+        if(!check.check(pBlocks))
+            throw new IllegalStateException("Level " + pIndex + " can't be played: "
+                    + LevelCheck.describe(check.getProblems()));
+
+        return new PreparedLevel(pIndex, pBlocks, DistanceField.compute(pBlocks),
+                BlockRects.merge(pBlocks, TILE_CELLS));
+    }
+
+    /**
+     * Getter of the index of the level
+     *
+     * @return Index in the registry, -1 if the level doesn't come from it.
+     */
+    public int getIndex() {
+        return mIndex;
+    }
+
+    /**
+     * Getter of the blocs of the level
+     *
+     * @return Blocs of the level.
+     */
+    public BlockStore getBlocks() {
+        return mBlocks;
+    }
+
+    /**
+     * Getter of the way to END from every cell
+     *
+     * @return Distance field of the level.
+     */
+    public DistanceField getDistanceField() {
+        return mField;
+    }
+
+    /**
+     * Getter of the blocs merged in rectangles, by tile of TILE_CELLS cells
+     *
+     * @return Rectangles of the level.
+     */
+    public BlockRects getRects() {
+        return mRects;
+    }
+}
@@ -0,0 +1,163 @@
+package dimitri_dessus.labymotion.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, recorded without lock nor allocation.
+ *
+ * Buckets are log-linear like HDR histograms: each power of two is split in
+ * 16 buckets, so a value is known within 6.25% whatever its magnitude, with
+ * less than a thousand buckets for the whole long range.
+ */
+
+public class LatencyHistogram {
+
+    // Buckets per power of two, as a number of bits
+    private static final int SUB_BITS   = 4;
+    private static final int SUB_COUNT  = 1 << SUB_BITS;
+    private static final int BUCKETS    = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * Record a duration. Safe from any thread.
+     *
+     * @param pValue Duration in nanoseconds, negative values count as 0.
+     */
+    public void record(long pValue) {
+        long value = Math.max(pValue, 0);
+        mCounts.incrementAndGet(indexOf(value));
+        mCount.incrementAndGet();
+        mTotal.addAndGet(value);
+
+        long max = mMax.get();
+        while(value > max && !mMax.compareAndSet(max, value))
+            max = mMax.get();
+    }
+
+    /**
+     * Forget recorded values. Values recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++)
+            mCounts.set(i, 0);
+        mCount.set(0);
+        mTotal.set(0);
+        mMax.set(0);
+    }
+
+    /**
+     * Copy recorded values.
+     *
+     * @return Snapshot of the histogram.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++)
+            counts[i] = mCounts.get(i);
+        return new Snapshot(counts, mCount.get(), mTotal.get(), mMax.get());
+    }
+
+    /**
+     * Bucket of a value.
+     *
+     * @param pValue Positive value.
+     * @return Index of the bucket.
+     */
+    static int indexOf(long pValue) {
+        if(pValue < SUB_COUNT)
+            return (int) pValue;
+
+        // Power of two, then SUB_BITS bits below the highest one
+        int exponent = 63 - Long.numberOfLeadingZeros(pValue);
+        int shift = exponent - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) | (int) ((pValue >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * Highest value of a bucket.
+     *
+     * @param pIndex Index of the bucket.
+     * @return Highest value counted in the bucket.
+     */
+    static long highestValueOf(int pIndex) {
+        if(pIndex < SUB_COUNT)
+            return pIndex;
+
+        int shift = (pIndex >> SUB_BITS) - 1;
+        long lowest = (long) (SUB_COUNT | (pIndex & (SUB_COUNT - 1))) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Values of a histogram at one point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] mCounts;
+        private final long mCount;
+        private final long mTotal;
+        private final long mMax;
+
+        private Snapshot(long[] pCounts, long pCount, long pTotal, long pMax) {
+            this.mCounts = pCounts;
+            this.mCount = pCount;
+            this.mTotal = pTotal;
+            this.mMax = pMax;
+        }
+
+        /**
+         * Getter of the number of values
+         *
+         * @return Number of values recorded.
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Getter of the mean value
+         *
+         * @return Mean in nanoseconds, 0 if nothing was recorded.
+         */
+        public long getMean() {
+            return mCount == 0 ? 0 : mTotal / mCount;
+        }
+
+        /**
+         * Getter of the max value
+         *
+         * @return Exact max in nanoseconds.
+         */
+        public long getMax() {
+            return mMax;
+        }
+
+        /**
+         * Getter of the value below which a share of the values are.
+         *
+         * @param pPercentile Share of the values, between 0 and 100.
+         * @return Value in nanoseconds, within 6.25% and never above the max.
+         */
+        public long getPercentile(double pPercentile) {
+            long total = 0;
+            for(long count : mCounts)
+                total += count;
+            if(total == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(total * pPercentile / 100.0));
+            long seen = 0;
+            for(int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if(seen >= rank)
+                    return Math.min(highestValueOf(i), mMax);
+            }
+            return mMax;
+        }
+    }
+}
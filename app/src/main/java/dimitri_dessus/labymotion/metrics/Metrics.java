@@ -0,0 +1,90 @@
+package dimitri_dessus.labymotion.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performance measures of the game engines.
+ *
+ * Measures are only taken while enabled: each measuring point first checks
+ * isEnabled(), so a disabled build only pays one volatile read per point.
+ *
+ * @see LatencyHistogram
+ * @see MetricsSnapshot
+ */
+
+public class Metrics {
+
+    // Time from sensor sample to its processing by the physics thread
+    public static final LatencyHistogram SENSOR_LATENCY = new LatencyHistogram();
+
+    // Time spent in the accelerometer listener
+    public static final LatencyHistogram SENSOR_CALLBACK = new LatencyHistogram();
+
+    // Time of one physics step: ball move and collision check
+    public static final LatencyHistogram STEP_TIME = new LatencyHistogram();
+
+    // Time to draw and post one frame
+    public static final LatencyHistogram FRAME_TIME = new LatencyHistogram();
+
+    // Vsyncs missed by the drawing thread
+    public static final AtomicLong DROPPED_FRAMES = new AtomicLong();
+
+    // Samples lost because the physics thread was late
+    public static final AtomicLong DROPPED_SAMPLES = new AtomicLong();
+
+    // Garbage collections reported by the runtime, -1 when unknown
+    public static final AtomicLong GC_COUNT = new AtomicLong(-1);
+
+    private static volatile boolean sEnabled = false;
+    private static volatile long sStartTime = System.nanoTime();
+    private static volatile long sStartGcCount = -1;
+
+    private Metrics() { }
+
+    /**
+     * Getter of the measuring state
+     *
+     * @return True if measures are taken.
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Start or stop taking measures.
+     *
+     * @param pEnabled True to take measures.
+     */
+    public static void setEnabled(boolean pEnabled) {
+        sEnabled = pEnabled;
+    }
+
+    /**
+     * Forget measures taken so far.
+     */
+    public static void reset() {
+        SENSOR_LATENCY.reset();
+        SENSOR_CALLBACK.reset();
+        STEP_TIME.reset();
+        FRAME_TIME.reset();
+        DROPPED_FRAMES.set(0);
+        DROPPED_SAMPLES.set(0);
+        sStartGcCount = GC_COUNT.get();
+        sStartTime = System.nanoTime();
+    }
+
+    /**
+     * Copy measures taken since last reset.
+     *
+     * @return Snapshot of the measures.
+     */
+    public static MetricsSnapshot snapshot() {
+        long gcCount = GC_COUNT.get();
+        long startGcCount = sStartGcCount;
+        return new MetricsSnapshot(System.nanoTime() - sStartTime,
+                SENSOR_LATENCY.snapshot(), SENSOR_CALLBACK.snapshot(), STEP_TIME.snapshot(), FRAME_TIME.snapshot(),
+                DROPPED_FRAMES.get(), DROPPED_SAMPLES.get(),
+                gcCount < 0 ? -1 : gcCount - Math.max(startGcCount, 0),
+                Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+    }
+}
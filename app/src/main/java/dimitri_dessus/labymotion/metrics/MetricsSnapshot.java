@@ -0,0 +1,165 @@
+package dimitri_dessus.labymotion.metrics;
+
+import java.util.Locale;
+
+/**
+ * Measures of the game engines at one point in time.
+ *
+ * @see Metrics
+ */
+
+public class MetricsSnapshot {
+
+    private final long mDuration;
+    private final LatencyHistogram.Snapshot mSensorLatency;
+    private final LatencyHistogram.Snapshot mSensorCallback;
+    private final LatencyHistogram.Snapshot mStepTime;
+    private final LatencyHistogram.Snapshot mFrameTime;
+    private final long mDroppedFrames;
+    private final long mDroppedSamples;
+    private final long mGcCount;
+    private final long mHeapUsed;
+
+    MetricsSnapshot(long pDuration, LatencyHistogram.Snapshot pSensorLatency, LatencyHistogram.Snapshot pSensorCallback,
+                    LatencyHistogram.Snapshot pStepTime, LatencyHistogram.Snapshot pFrameTime,
+                    long pDroppedFrames, long pDroppedSamples, long pGcCount, long pHeapUsed) {
+        this.mDuration = pDuration;
+        this.mSensorLatency = pSensorLatency;
+        this.mSensorCallback = pSensorCallback;
+        this.mStepTime = pStepTime;
+        this.mFrameTime = pFrameTime;
+        this.mDroppedFrames = pDroppedFrames;
+        this.mDroppedSamples = pDroppedSamples;
+        this.mGcCount = pGcCount;
+        this.mHeapUsed = pHeapUsed;
+    }
+
+    /**
+     * Getter of the measuring time
+     *
+     * @return Time since measures were reset in nanoseconds.
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * Getter of the time from sensor sample to physics
+     *
+     * @return Histogram in nanoseconds.
+     */
+    public LatencyHistogram.Snapshot getSensorLatency() {
+        return mSensorLatency;
+    }
+
+    /**
+     * Getter of the time spent in the accelerometer listener
+     *
+     * @return Histogram in nanoseconds.
+     */
+    public LatencyHistogram.Snapshot getSensorCallback() {
+        return mSensorCallback;
+    }
+
+    /**
+     * Getter of the time of physics steps
+     *
+     * @return Histogram in nanoseconds.
+     */
+    public LatencyHistogram.Snapshot getStepTime() {
+        return mStepTime;
+    }
+
+    /**
+     * Getter of the time of frames
+     *
+     * @return Histogram in nanoseconds.
+     */
+    public LatencyHistogram.Snapshot getFrameTime() {
+        return mFrameTime;
+    }
+
+    /**
+     * Getter of the number of vsyncs missed
+     *
+     * @return Count since measures were reset.
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Getter of the number of sensor samples lost
+     *
+     * @return Count since measures were reset.
+     */
+    public long getDroppedSamples() {
+        return mDroppedSamples;
+    }
+
+    /**
+     * Getter of the number of garbage collections
+     *
+     * @return Collections since measures were reset, -1 if the runtime doesn't report them.
+     */
+    public long getGcCount() {
+        return mGcCount;
+    }
+
+    /**
+     * Getter of the heap in use when the snapshot was taken
+     *
+     * @return Heap in use in bytes.
+     */
+    public long getHeapUsed() {
+        return mHeapUsed;
+    }
+
+    /**
+     * Short summary, a few lines for the debug overlay.
+     *
+     * @return Lines of the summary.
+     */
+    public String[] toLines() {
+        double seconds = mDuration / 1e9;
+        return new String[] {
+                String.format(Locale.US, "fps %.1f  dropped %d  gc %d  heap %d KB",
+                        seconds > 0 ? mFrameTime.getCount() / seconds : 0.0, mDroppedFrames, mGcCount, mHeapUsed / 1024),
+                "frame " + summary(mFrameTime),
+                "step " + summary(mStepTime),
+                "sensor " + summary(mSensorLatency)
+        };
+    }
+
+    /**
+     * Full dump of the measures.
+     *
+     * @return Text of the dump, one measure per line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder dump = new StringBuilder();
+        dump.append(String.format(Locale.US, "duration %.3f s\n", mDuration / 1e9));
+        append(dump, "sensor latency", mSensorLatency);
+        append(dump, "sensor callback", mSensorCallback);
+        append(dump, "physics step", mStepTime);
+        append(dump, "frame time", mFrameTime);
+        dump.append("dropped frames ").append(mDroppedFrames).append('\n');
+        dump.append("dropped samples ").append(mDroppedSamples).append('\n');
+        dump.append("gc count ").append(mGcCount).append('\n');
+        dump.append("heap used ").append(mHeapUsed).append(" B\n");
+        return dump.toString();
+    }
+
+    private static String summary(LatencyHistogram.Snapshot pHistogram) {
+        return String.format(Locale.US, "p50 %.2f  p99 %.2f  max %.2f ms",
+                pHistogram.getPercentile(50) / 1e6, pHistogram.getPercentile(99) / 1e6, pHistogram.getMax() / 1e6);
+    }
+
+    private static void append(StringBuilder pDump, String pName, LatencyHistogram.Snapshot pHistogram) {
+        pDump.append(String.format(Locale.US, "%s count %d mean %d p50 %d p90 %d p99 %d p99.9 %d max %d ns\n",
+                pName, pHistogram.getCount(), pHistogram.getMean(), pHistogram.getPercentile(50),
+                pHistogram.getPercentile(90), pHistogram.getPercentile(99), pHistogram.getPercentile(99.9),
+                pHistogram.getMax()));
+    }
+}
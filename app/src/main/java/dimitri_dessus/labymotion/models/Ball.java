@@ -1,7 +1,8 @@
 package dimitri_dessus.labymotion.models;
 
 import android.graphics.Color;
-import android.graphics.RectF;
+
+import java.nio.ByteBuffer;
 
 /**
  * Created by Dimitri on 14/04/2017.
@@ -11,45 +12,60 @@ import android.graphics.RectF;
 public class Ball {
     // Radius of the ball
     public static float RADIUS  = 10.0f;
-    private int ballColor       = Color.GREEN;
+    private volatile int ballColor = Color.GREEN;
+
+    // Ball color of each magnetic field level
+    private static final int[] MAGNETIC_COLORS = {0xFF66FF33, 0xFFFF0066, 0xFFFF66FF, 0xFF9900FF};
 
     // Max speed of ball
-    private static final float MAX_SPEED = 30.0f;
+    static final float MAX_SPEED = 30.0f;
 
     // Slow down ball
-    private static final float COMPENSATOR = 8.0f;
+    public static final float COMPENSATOR = 8.0f;
 
     // Used to compensate bounds
-    private static final float REBOUND = 1.75f;
+    static final float REBOUND = 1.75f;
 
-    // Rect used to set original position of the ball
-    private RectF mInitialRectangle = null;
+    // Bytes written by writeState
+    public static final int STATE_SIZE = 6 * 4;
 
-    // Rect collision
-    private RectF mRectangle = null;
+    // Original position of the ball
+    private float mInitialX;
+    private float mInitialY;
 
     // Coordinates X and Y
     private float mX;
     private float mY;
 
+    // Coordinates X and Y before the last move
+    private float mLastX;
+    private float mLastY;
+
     // Axis speed
     private float mSpeedX = 0;
     private float mSpeedY = 0;
 
-    // Screen size
+    // Position published for the drawing thread
+    private final BallSnapshot mSnapshot = new BallSnapshot();
+
+    // Size of the world the ball rolls in, the whole labyrinth
     private int mWidth = -1;
     private int mHeight = -1;
 
     /**
-     * Setter of initial rectangle (start point)
+     * Setter of initial position (start point)
      *
-     * @param pInitialRectangle Rectangle shape as starting point.
-     * @see RectF
+     * @param pLeft Left of the start block.
+     * @param pTop Top of the start block.
      */
-    public void setInitialRectangle(RectF pInitialRectangle) {
-        this.mInitialRectangle = pInitialRectangle;
-        this.mX = pInitialRectangle.left + RADIUS;
-        this.mY = pInitialRectangle.top + RADIUS;
+    public void setInitialPosition(float pLeft, float pTop) {
+        this.mInitialX = pLeft + RADIUS;
+        this.mInitialY = pTop + RADIUS;
+        this.mX = mInitialX;
+        this.mY = mInitialY;
+        this.mLastX = mX;
+        this.mLastY = mY;
+        publish();
     }
 
     /**
@@ -115,6 +131,15 @@ public class Ball {
         this.mHeight = pHeight;
     }
 
+    /**
+     * Get the height of the area where the ball moves
+     *
+     * @return Height value, -1 until set.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
     /**
      * Set the width of the ball
      *
@@ -125,13 +150,21 @@ public class Ball {
         this.mWidth = pWidth;
     }
 
+    /**
+     * Get the width of the area where the ball moves
+     *
+     * @return Width value, -1 until set.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
     /**
      * Constructor of Ball object
      *
      * @see Ball
      */
     public Ball() {
-        mRectangle = new RectF();
     }
 
     /**
@@ -139,10 +172,11 @@ public class Ball {
      *
      * @param pX X axis.
      * @param pY Y axis.
-     * @return New position as RectF.
-     * @see RectF
      */
-    public RectF putXAndY(float pX, float pY) {
+    public void putXAndY(float pX, float pY) {
+        mLastX = mX;
+        mLastY = mY;
+
         mSpeedX += pX / COMPENSATOR;
         if(mSpeedX > MAX_SPEED)
             mSpeedX = MAX_SPEED;
@@ -157,11 +191,50 @@ public class Ball {
 
         setPosX(mX + mSpeedY);
         setPosY(mY + mSpeedX);
+    }
+
+    /**
+     * Move the ball back along its last step.
+     *
+     * @param pTime Fraction of the step to keep, between 0 and 1.
+     */
+    public void rewind(float pTime) {
+        mX = mLastX + (mX - mLastX) * pTime;
+        mY = mLastY + (mY - mLastY) * pTime;
+    }
+
+    /**
+     * Move the ball out of the walls it ran into during the last step, and bounce on them.
+     *
+     * @param pWalls Walls touched during the last step.
+     * @see WallContacts
+     */
+    public void applyWalls(WallContacts pWalls) {
+        mX = pWalls.getX();
+        mY = pWalls.getY();
 
-        // Set collision coordinate
-        mRectangle.set(mX - RADIUS, mY - RADIUS, mX + RADIUS, mY + RADIUS);
+        // Speed in X moves the ball in the Y axis of the screen
+        pWalls.bounce(mSpeedY, mSpeedX);
+        mSpeedY = pWalls.getSpeedX();
+        mSpeedX = pWalls.getSpeedY();
+    }
 
-        return mRectangle;
+    /**
+     * Get X position before the last move
+     *
+     * @return X position before the last move.
+     */
+    public float getLastX() {
+        return mLastX;
+    }
+
+    /**
+     * Get Y position before the last move
+     *
+     * @return Y position before the last move.
+     */
+    public float getLastY() {
+        return mLastY;
     }
 
     /**
@@ -171,8 +244,61 @@ public class Ball {
     public void reset() {
         mSpeedX = 0;
         mSpeedY = 0;
-        this.mX = mInitialRectangle.left + RADIUS;
-        this.mY = mInitialRectangle.top + RADIUS;
+        this.mX = mInitialX;
+        this.mY = mInitialY;
+        this.mLastX = mX;
+        this.mLastY = mY;
+        publish();
+    }
+
+    /**
+     * Write position, position before the last move and speed of the ball.
+     *
+     * @param pBuffer Buffer to write STATE_SIZE bytes to.
+     */
+    public void writeState(ByteBuffer pBuffer) {
+        pBuffer.putFloat(mX);
+        pBuffer.putFloat(mY);
+        pBuffer.putFloat(mLastX);
+        pBuffer.putFloat(mLastY);
+        pBuffer.putFloat(mSpeedX);
+        pBuffer.putFloat(mSpeedY);
+    }
+
+    /**
+     * Read the state written by writeState, and publish the position.
+     *
+     * @param pBuffer Buffer to read STATE_SIZE bytes from.
+     * @param pScale Scale of the labyrinth since the state was written, 1 if the radius didn't change.
+     */
+    public void readState(ByteBuffer pBuffer, float pScale) {
+        mX = pBuffer.getFloat() * pScale;
+        mY = pBuffer.getFloat() * pScale;
+        mLastX = pBuffer.getFloat() * pScale;
+        mLastY = pBuffer.getFloat() * pScale;
+        mSpeedX = pBuffer.getFloat() * pScale;
+        mSpeedY = pBuffer.getFloat() * pScale;
+        publish();
+    }
+
+    /**
+     * Publish current position for the drawing thread.
+     * Must be called by the thread moving the ball.
+     *
+     * @see BallSnapshot
+     */
+    public void publish() {
+        mSnapshot.publish(mX, mY);
+    }
+
+    /**
+     * Getter of the position published for the drawing thread
+     *
+     * @return Snapshot of the ball position.
+     * @see BallSnapshot
+     */
+    public BallSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     /**
@@ -187,21 +313,10 @@ public class Ball {
     /**
      * Change ball color according to magnetic field level.
      *
-     * @param magneticField Magnetic level captured by the device.
+     * @param pLevel Level of the magnetic field.
+     * @see dimitri_dessus.labymotion.sensors.ColorLevels
      */
-    public void setBallColor(double magneticField) {
-
-        int color;
-        if(magneticField <= 100.0f) {
-            color = Color.parseColor("#66ff33");
-        } else if (magneticField > 100.0f && magneticField <= 200.0f) {
-            color = Color.parseColor("#ff0066");
-        } else if (magneticField > 200.0f && magneticField <= 300.0f) {
-            color = Color.parseColor("#ff66ff");
-        } else {
-            color = Color.parseColor("#9900ff");
-        }
-
-        this.ballColor = color;
+    public void setMagneticLevel(int pLevel) {
+        this.ballColor = MAGNETIC_COLORS[pLevel];
     }
 }
@@ -0,0 +1,127 @@
+package dimitri_dessus.labymotion.models;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Position of the ball, or values of several balls, handed from the physics
+ * thread to the drawing thread.
+ *
+ * Triple buffer: the producer writes in its back buffer then swaps it with the
+ * ready one, the consumer swaps its front buffer with the ready one when a new
+ * position has been published. Both sides only do one atomic swap, never wait
+ * for each other and never see a half written position.
+ *
+ * Only one thread at a time may publish, and only one thread may read.
+ */
+
+public class BallSnapshot {
+
+    // Flag set in mReady when the ready buffer holds a position not read yet
+    private static final int FRESH = 4;
+
+    // Values of each of the 3 buffers, X and Y for a single ball
+    private final int mCapacity;
+    private final float[] mBuffers;
+    private final int[] mLengths = new int[3];
+
+    // Index of the ready buffer, plus FRESH flag
+    private final AtomicInteger mReady = new AtomicInteger(1);
+
+    // Buffer owned by the producer
+    private int mBack = 0;
+
+    // Buffer owned by the consumer
+    private int mFront = 2;
+
+    /**
+     * Constructor of BallSnapshot class for the position of one ball
+     */
+    public BallSnapshot() {
+        this(2);
+    }
+
+    /**
+     * Constructor of BallSnapshot class
+     *
+     * @param pCapacity Max number of values published at once.
+     */
+    public BallSnapshot(int pCapacity) {
+        this.mCapacity = pCapacity;
+        this.mBuffers = new float[pCapacity * 3];
+    }
+
+    /**
+     * Publish a new position. Called by the producer.
+     *
+     * @param pX Position in the X axis.
+     * @param pY Position in the Y axis.
+     */
+    public void publish(float pX, float pY) {
+        mBuffers[mBack * mCapacity] = pX;
+        mBuffers[mBack * mCapacity + 1] = pY;
+        mLengths[mBack] = 2;
+        mBack = mReady.getAndSet(mBack | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Publish new values. Called by the producer.
+     *
+     * @param pValues Values to copy.
+     * @param pLength Number of values, at most the capacity.
+     */
+    public void publish(float[] pValues, int pLength) {
+        System.arraycopy(pValues, 0, mBuffers, mBack * mCapacity, pLength);
+        mLengths[mBack] = pLength;
+        mBack = mReady.getAndSet(mBack | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Take the last published position if it has not been read yet. Called by the consumer.
+     *
+     * @return True if the position changed since the last call.
+     */
+    public boolean acquire() {
+        if((mReady.get() & FRESH) == 0)
+            return false;
+
+        mFront = mReady.getAndSet(mFront) & ~FRESH;
+        return true;
+    }
+
+    /**
+     * Getter of the position in the X axis, as of the last acquire.
+     *
+     * @return Position in the X axis.
+     */
+    public float getX() {
+        return mBuffers[mFront * mCapacity];
+    }
+
+    /**
+     * Getter of the position in the Y axis, as of the last acquire.
+     *
+     * @return Position in the Y axis.
+     */
+    public float getY() {
+        return mBuffers[mFront * mCapacity + 1];
+    }
+
+    /**
+     * Getter of the number of values, as of the last acquire.
+     *
+     * @return Number of values, 0 before the first acquire.
+     */
+    public int getLength() {
+        return mLengths[mFront];
+    }
+
+    /**
+     * Getter of a value, as of the last acquire.
+     *
+     * @param pIndex Index of the value, less than getLength().
+     * @return Value.
+     */
+    public float getValue(int pIndex) {
+        return mBuffers[mFront * mCapacity + pIndex];
+    }
+}
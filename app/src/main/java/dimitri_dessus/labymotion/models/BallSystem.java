@@ -0,0 +1,548 @@
+package dimitri_dessus.labymotion.models;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Many balls rolling together, each with its own radius.
+ *
+ * Balls are stored as primitive arrays, one per property, so a step walks
+ * memory in order and never allocates. Balls move like Ball, bounce on walls
+ * and on each other, and stop when they hit a HOLE or END bloc.
+ *
+ * Ball to ball collisions use a uniform grid as broad phase: grid cells are
+ * hashed in a table sized to the number of balls, balls are sorted by hash with
+ * a counting sort, then each ball is only tested against balls of its own cell
+ * and of the neighbour cells. Only cells holding balls are visited, so a step
+ * costs the same whatever the size of the world. Cells are as large as the
+ * biggest ball, so two touching balls are always in neighbour cells.
+ *
+ * Moving balls and checking blocs is independent for each ball, and can be
+ * split between threads when there are many balls.
+ *
+ * @see Ball
+ */
+
+public class BallSystem {
+
+    // Number of balls from which moves are split between threads
+    public static final int PARALLEL_THRESHOLD = 512;
+
+    // Speed kept after a ball to ball collision, same as a bounce on the sides
+    private static final float RESTITUTION = 1 / Ball.REBOUND;
+
+    // Properties of each ball
+    private final int mCapacity;
+    private int mCount = 0;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mLastX;
+    private final float[] mLastY;
+    private final float[] mSpeedX;
+    private final float[] mSpeedY;
+    private final float[] mRadius;
+    private final byte[] mState;
+    private float mMaxRadius = 0;
+
+    // Area where the balls move
+    private int mWidth = -1;
+    private int mHeight = -1;
+
+    // Broad phase grid: cell of each ball, first sorted ball of each hash, balls sorted by hash
+    private final int[] mCellX;
+    private final int[] mCellY;
+    private final int[] mHashOf;
+    private final int[] mHashStart;
+    private final int[] mHashFill;
+    private final int[] mSorted;
+
+    // Moves split between threads
+    private ExecutorService mExecutor = null;
+    private Mover[] mMovers = { new Mover() };
+
+    // Parts not over yet, and thread waiting for them, reused from one step to another
+    private final AtomicInteger mPending = new AtomicInteger();
+    private volatile Thread mWaiter = null;
+
+    // Step being run
+    private float mTiltX;
+    private float mTiltY;
+    private BlockStore mBlocks;
+    private float mCellSize;
+
+    // X, Y and radius of rolling balls, published for the drawing thread
+    private final float[] mPublished;
+    private final BallSnapshot mSnapshot;
+
+    /**
+     * Constructor of BallSystem class
+     *
+     * @param pCapacity Max number of balls.
+     */
+    public BallSystem(int pCapacity) {
+        this.mCapacity = pCapacity;
+        this.mX = new float[pCapacity];
+        this.mY = new float[pCapacity];
+        this.mLastX = new float[pCapacity];
+        this.mLastY = new float[pCapacity];
+        this.mSpeedX = new float[pCapacity];
+        this.mSpeedY = new float[pCapacity];
+        this.mRadius = new float[pCapacity];
+        this.mState = new byte[pCapacity];
+        this.mCellX = new int[pCapacity];
+        this.mCellY = new int[pCapacity];
+        this.mHashOf = new int[pCapacity];
+
+        // At least twice as many hashes as balls, so few cells share one
+        int hashes = Integer.highestOneBit(Math.max(pCapacity, 1)) * 4;
+        this.mHashStart = new int[hashes + 1];
+        this.mHashFill = new int[hashes];
+        this.mSorted = new int[pCapacity];
+        this.mPublished = new float[pCapacity * 3];
+        this.mSnapshot = new BallSnapshot(pCapacity * 3);
+    }
+
+    /**
+     * Add a still ball.
+     *
+     * @param pX Position in the X axis.
+     * @param pY Position in the Y axis.
+     * @param pRadius Radius of the ball.
+     * @return Index of the ball.
+     * @throws IllegalStateException If there are already as many balls as the capacity.
+     */
+    public int add(float pX, float pY, float pRadius) {
+        if(mCount == mCapacity)
+            throw new IllegalStateException("No room for more than " + mCapacity + " balls");
+        if(pRadius <= 0)
+            throw new IllegalArgumentException("Radius must be positive");
+
+        int i = mCount++;
+        mX[i] = pX;
+        mY[i] = pY;
+        mLastX[i] = pX;
+        mLastY[i] = pY;
+        mSpeedX[i] = 0;
+        mSpeedY[i] = 0;
+        mRadius[i] = pRadius;
+        mState[i] = BlockStore.EMPTY;
+        mMaxRadius = Math.max(mMaxRadius, pRadius);
+        return i;
+    }
+
+    /**
+     * Set the speed of a ball.
+     *
+     * @param pIndex Index of the ball.
+     * @param pSpeedX Move of the ball in the X axis of the screen at next step.
+     * @param pSpeedY Move of the ball in the Y axis of the screen at next step.
+     */
+    public void setSpeed(int pIndex, float pSpeedX, float pSpeedY) {
+        mSpeedX[pIndex] = pSpeedX;
+        mSpeedY[pIndex] = pSpeedY;
+    }
+
+    /**
+     * Remove all balls.
+     */
+    public void clear() {
+        mCount = 0;
+        mMaxRadius = 0;
+    }
+
+    /**
+     * Set the area where the balls move.
+     *
+     * @param pWidth Width of the area.
+     * @param pHeight Height of the area.
+     */
+    public void setBounds(int pWidth, int pHeight) {
+        this.mWidth = pWidth;
+        this.mHeight = pHeight;
+    }
+
+    /**
+     * Split moves between threads when there are at least PARALLEL_THRESHOLD balls.
+     *
+     * @param pExecutor Threads running the moves, null to run them on the calling thread only.
+     * @param pTasks Number of parts the balls are split in, the calling thread running one of them.
+     */
+    public void setExecutor(ExecutorService pExecutor, int pTasks) {
+        this.mExecutor = pExecutor;
+        this.mMovers = new Mover[pExecutor == null ? 1 : Math.max(pTasks, 1)];
+        for(int i = 0; i < mMovers.length; i++)
+            mMovers[i] = new Mover();
+    }
+
+    /**
+     * Move all rolling balls of one step, then resolve collisions between them.
+     *
+     * @param pTiltX Tilt in the X axis.
+     * @param pTiltY Tilt in the Y axis.
+     * @param pBlocks Blocs of the labyrinth, null for none.
+     * @param pCellSize Size of the labyrinth cells.
+     * @return Number of ball to ball contacts resolved.
+     */
+    public int step(float pTiltX, float pTiltY, BlockStore pBlocks, float pCellSize) {
+        mTiltX = pTiltX;
+        mTiltY = pTiltY;
+        mBlocks = pBlocks;
+        mCellSize = pCellSize;
+
+        if(mExecutor != null && mMovers.length > 1 && mCount >= PARALLEL_THRESHOLD)
+            moveParallel();
+        else
+            mMovers[0].move(0, mCount);
+
+        return collide();
+    }
+
+    /**
+     * Publish position and radius of rolling balls for the drawing thread.
+     * Must be called by the thread moving the balls.
+     *
+     * @see BallSnapshot
+     */
+    public void publish() {
+        int length = 0;
+        for(int i = 0; i < mCount; i++) {
+            if(mState[i] != BlockStore.EMPTY)
+                continue;
+            mPublished[length++] = mX[i];
+            mPublished[length++] = mY[i];
+            mPublished[length++] = mRadius[i];
+        }
+        mSnapshot.publish(mPublished, length);
+    }
+
+    /**
+     * Getter of the values published for the drawing thread
+     *
+     * @return Snapshot of X, Y and radius of each rolling ball.
+     */
+    public BallSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Getter of the number of balls
+     *
+     * @return Number of balls, rolling or not.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Getter of the position of a ball in the X axis
+     *
+     * @param pIndex Index of the ball.
+     * @return Position in the X axis.
+     */
+    public float getX(int pIndex) {
+        return mX[pIndex];
+    }
+
+    /**
+     * Getter of the position of a ball in the Y axis
+     *
+     * @param pIndex Index of the ball.
+     * @return Position in the Y axis.
+     */
+    public float getY(int pIndex) {
+        return mY[pIndex];
+    }
+
+    /**
+     * Getter of the radius of a ball
+     *
+     * @param pIndex Index of the ball.
+     * @return Radius of the ball.
+     */
+    public float getRadius(int pIndex) {
+        return mRadius[pIndex];
+    }
+
+    /**
+     * Getter of the speed of a ball in the X axis of the screen
+     *
+     * @param pIndex Index of the ball.
+     * @return Move of the ball in the X axis at next step.
+     */
+    public float getSpeedX(int pIndex) {
+        return mSpeedX[pIndex];
+    }
+
+    /**
+     * Getter of the speed of a ball in the Y axis of the screen
+     *
+     * @param pIndex Index of the ball.
+     * @return Move of the ball in the Y axis at next step.
+     */
+    public float getSpeedY(int pIndex) {
+        return mSpeedY[pIndex];
+    }
+
+    /**
+     * Getter of the state of a ball
+     *
+     * @param pIndex Index of the ball.
+     * @return BlockStore.EMPTY while rolling, type of the bloc which stopped the ball otherwise.
+     * @see BlockStore
+     */
+    public byte getState(int pIndex) {
+        return mState[pIndex];
+    }
+
+    /**
+     * Split moves between the calling thread and the executor, and wait for all of them.
+     */
+    private void moveParallel() {
+        int tasks = mMovers.length;
+        mWaiter = Thread.currentThread();
+        mPending.set(tasks - 1);
+        for(int t = 1; t < tasks; t++) {
+            Mover mover = mMovers[t];
+            mover.mFrom = mCount * t / tasks;
+            mover.mTo = mCount * (t + 1) / tasks;
+            mExecutor.execute(mover);
+        }
+
+        mMovers[0].move(0, mCount / tasks);
+
+        // Balls are shared with the other tasks, they must be over before going on, even on interrupt
+        boolean interrupted = false;
+        while(mPending.get() > 0) {
+            LockSupport.park(this);
+            if(Thread.interrupted())
+                interrupted = true;
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Sort rolling balls in the grid and resolve overlaps of neighbour balls.
+     *
+     * @return Number of contacts resolved.
+     */
+    private int collide() {
+        if(mCount < 2)
+            return 0;
+
+        // Grid cells as large as the biggest ball
+        float gridSize = Math.max(mMaxRadius * 2, 1);
+        int columns = Math.max((int) Math.ceil(mWidth / gridSize), 1);
+        int rows = Math.max((int) Math.ceil(mHeight / gridSize), 1);
+
+        // Hashes used for this number of balls
+        int hashes = Math.min(Integer.highestOneBit(mCount) * 4, mHashFill.length);
+
+        // Counting sort of rolling balls by hash of their cell
+        java.util.Arrays.fill(mHashStart, 0, hashes + 1, 0);
+        for(int i = 0; i < mCount; i++) {
+            if(mState[i] != BlockStore.EMPTY) {
+                mHashOf[i] = -1;
+                continue;
+            }
+            int x = Math.min(Math.max((int) (mX[i] / gridSize), 0), columns - 1);
+            int y = Math.min(Math.max((int) (mY[i] / gridSize), 0), rows - 1);
+            int hash = hash(x, y, hashes);
+            mCellX[i] = x;
+            mCellY[i] = y;
+            mHashOf[i] = hash;
+            mHashStart[hash + 1]++;
+        }
+        for(int h = 0; h < hashes; h++) {
+            mHashStart[h + 1] += mHashStart[h];
+            mHashFill[h] = mHashStart[h];
+        }
+        for(int i = 0; i < mCount; i++) {
+            if(mHashOf[i] != -1)
+                mSorted[mHashFill[mHashOf[i]]++] = i;
+        }
+
+        // Each pair once: same cell, then right, bottom left, bottom and bottom right cells
+        int contacts = 0;
+        for(int k = 0; k < mHashStart[hashes]; k++) {
+            int a = mSorted[k];
+            int x = mCellX[a];
+            int y = mCellY[a];
+            int hash = mHashOf[a];
+            for(int l = k + 1; l < mHashStart[hash + 1]; l++) {
+                int b = mSorted[l];
+                if(mCellX[b] == x && mCellY[b] == y)
+                    contacts += resolve(a, b);
+            }
+            if(x + 1 < columns)
+                contacts += resolveCell(a, x + 1, y, hashes);
+            if(y + 1 < rows) {
+                if(x > 0)
+                    contacts += resolveCell(a, x - 1, y + 1, hashes);
+                contacts += resolveCell(a, x, y + 1, hashes);
+                if(x + 1 < columns)
+                    contacts += resolveCell(a, x + 1, y + 1, hashes);
+            }
+        }
+        return contacts;
+    }
+
+    private int resolveCell(int pBall, int pX, int pY, int pHashes) {
+        int contacts = 0;
+        int hash = hash(pX, pY, pHashes);
+        for(int k = mHashStart[hash]; k < mHashStart[hash + 1]; k++) {
+            int b = mSorted[k];
+
+            // Other cells may share the hash
+            if(mCellX[b] == pX && mCellY[b] == pY)
+                contacts += resolve(pBall, b);
+        }
+        return contacts;
+    }
+
+    private static int hash(int pX, int pY, int pHashes) {
+        return (pX * 73856093 ^ pY * 19349663) & (pHashes - 1);
+    }
+
+    /**
+     * Push two overlapping balls apart and bounce them, heavier balls being pushed less.
+     *
+     * @return 1 if the balls overlapped, 0 otherwise.
+     */
+    private int resolve(int a, int b) {
+        float dX = mX[b] - mX[a];
+        float dY = mY[b] - mY[a];
+        float reach = mRadius[a] + mRadius[b];
+        float distance2 = dX * dX + dY * dY;
+        if(distance2 >= reach * reach)
+            return 0;
+
+        // Contact normal, from a to b
+        float distance = (float) Math.sqrt(distance2);
+        float nX = 1;
+        float nY = 0;
+        if(distance > 0) {
+            nX = dX / distance;
+            nY = dY / distance;
+        }
+
+        // Mass grows with the disc area
+        float massA = mRadius[a] * mRadius[a];
+        float massB = mRadius[b] * mRadius[b];
+        float total = massA + massB;
+
+        float overlap = reach - distance;
+        mX[a] = clamp(mX[a] - nX * overlap * massB / total, mRadius[a], mWidth);
+        mY[a] = clamp(mY[a] - nY * overlap * massB / total, mRadius[a], mHeight);
+        mX[b] = clamp(mX[b] + nX * overlap * massA / total, mRadius[b], mWidth);
+        mY[b] = clamp(mY[b] + nY * overlap * massA / total, mRadius[b], mHeight);
+
+        // Bounce if balls are getting closer
+        float closing = (mSpeedX[b] - mSpeedX[a]) * nX + (mSpeedY[b] - mSpeedY[a]) * nY;
+        if(closing < 0) {
+            float impulse = -(1 + RESTITUTION) * closing / (1 / massA + 1 / massB);
+            mSpeedX[a] -= impulse / massA * nX;
+            mSpeedY[a] -= impulse / massA * nY;
+            mSpeedX[b] += impulse / massB * nX;
+            mSpeedY[b] += impulse / massB * nY;
+        }
+        return 1;
+    }
+
+    private static float clamp(float pValue, float pRadius, int pSize) {
+        if(pValue < pRadius)
+            return pRadius;
+        if(pValue > pSize - pRadius)
+            return Math.max(pSize - pRadius, pRadius);
+        return pValue;
+    }
+
+    /**
+     * Move a range of balls, with its own collision object so ranges can run at the same time.
+     */
+    private class Mover implements Runnable {
+        private final Collision mCollision = new Collision();
+        private final WallContacts mWalls = new WallContacts();
+        int mFrom;
+        int mTo;
+
+        @Override
+        public void run() {
+            try {
+                move(mFrom, mTo);
+            } finally {
+                if(mPending.decrementAndGet() == 0)
+                    LockSupport.unpark(mWaiter);
+            }
+        }
+
+        /**
+         * Move balls like Ball.putXAndY, push them back from walls, then stop them
+         * on the first HOLE or END bloc crossed.
+         */
+        void move(int pFrom, int pTo) {
+            float accelX = mTiltY / Ball.COMPENSATOR;
+            float accelY = mTiltX / Ball.COMPENSATOR;
+
+            for(int i = pFrom; i < pTo; i++) {
+                if(mState[i] != BlockStore.EMPTY)
+                    continue;
+
+                float radius = mRadius[i];
+                float lastX = mX[i];
+                float lastY = mY[i];
+                mLastX[i] = lastX;
+                mLastY[i] = lastY;
+
+                // Tilt in Y moves the ball in the X axis of the screen, as for Ball
+                float speedX = Math.max(Math.min(mSpeedX[i] + accelX, Ball.MAX_SPEED), -Ball.MAX_SPEED);
+                float speedY = Math.max(Math.min(mSpeedY[i] + accelY, Ball.MAX_SPEED), -Ball.MAX_SPEED);
+
+                // Bounce on the sides
+                float x = lastX + speedX;
+                if(x < radius) {
+                    x = radius;
+                    speedX = -speedX / Ball.REBOUND;
+                } else if(x > mWidth - radius) {
+                    x = mWidth - radius;
+                    speedX = -speedX / Ball.REBOUND;
+                }
+                float y = lastY + speedY;
+                if(y < radius) {
+                    y = radius;
+                    speedY = -speedY / Ball.REBOUND;
+                } else if(y > mHeight - radius) {
+                    y = mHeight - radius;
+                    speedY = -speedY / Ball.REBOUND;
+                }
+
+                // Push back from walls, cached walls are reused by neighbour balls. Walls touched
+                // by the previous ball are forgotten, so the result doesn't depend on how balls are split.
+                mWalls.clearContacts();
+                if(mBlocks != null && mWalls.resolve(mBlocks, mCellSize, lastX, lastY, x, y, radius)) {
+                    x = mWalls.getX();
+                    y = mWalls.getY();
+                    mWalls.bounce(speedX, speedY);
+                    speedX = mWalls.getSpeedX();
+                    speedY = mWalls.getSpeedY();
+                }
+
+                // Stop where the ball falls
+                if(mBlocks != null && mBlocks.sweep(lastX, lastY, x, y, radius, mCellSize, mCollision)) {
+                    float time = mCollision.getTime();
+                    x = lastX + (x - lastX) * time;
+                    y = lastY + (y - lastY) * time;
+                    speedX = 0;
+                    speedY = 0;
+                    mState[i] = mCollision.getType();
+                }
+
+                mX[i] = x;
+                mY[i] = y;
+                mSpeedX[i] = speedX;
+                mSpeedY[i] = speedY;
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package dimitri_dessus.labymotion.models;
+
+import java.util.Arrays;
+
+/**
+ * Blocs of a labyrinth merged in rectangles of cells of the same type, so a
+ * row of holes is drawn with one rectangle instead of one per cell.
+ *
+ * Rectangles are built greedily: cells are walked row by row, the first cell
+ * not merged yet starts a rectangle grown to the right while cells have the
+ * same type, then down while the whole row below matches. Every non empty cell
+ * is in exactly one rectangle, so drawing the rectangles paints the same pixels
+ * as drawing the cells one by one.
+ *
+ * Rectangles are also listed by tile of cells, each one in all the tiles it
+ * overlaps, so a tile is drawn from its own list only, clipped to the tile.
+ * Rectangles are stored as primitive arrays, in cells, right and bottom excluded.
+ *
+ * @see BlockStore
+ */
+
+public class BlockRects {
+
+    private final int mColumns;
+    private final int mRows;
+    private final int mTileCells;
+    private final int mTileColumns;
+    private final int mTileRows;
+
+    // Rectangles of each tile: first entry of each tile, and rectangles of all tiles
+    private final int[] mTileStart;
+    private int[] mTileRects;
+
+    private int mCount = 0;
+    private int[] mLeft;
+    private int[] mTop;
+    private int[] mRight;
+    private int[] mBottom;
+    private byte[] mType;
+
+    private BlockRects(int pColumns, int pRows, int pTileCells) {
+        this.mColumns = pColumns;
+        this.mRows = pRows;
+        this.mTileCells = pTileCells;
+        this.mTileColumns = (pColumns + pTileCells - 1) / pTileCells;
+        this.mTileRows = (pRows + pTileCells - 1) / pTileCells;
+        this.mTileStart = new int[mTileColumns * mTileRows + 1];
+
+        int capacity = 16;
+        this.mLeft = new int[capacity];
+        this.mTop = new int[capacity];
+        this.mRight = new int[capacity];
+        this.mBottom = new int[capacity];
+        this.mType = new byte[capacity];
+    }
+
+    /**
+     * Merge the blocs of a labyrinth.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @param pTileCells Cells in each side of the tiles rectangles are listed by.
+     * @return Rectangles of the labyrinth.
+     */
+    public static BlockRects merge(BlockStore pBlocks, int pTileCells) {
+        if(pTileCells <= 0)
+            throw new IllegalArgumentException("Bad tile size " + pTileCells);
+
+        byte[] cells = pBlocks.getCells();
+        int columns = pBlocks.getColumns();
+        int rows = pBlocks.getRows();
+        BlockRects rects = new BlockRects(columns, rows, pTileCells);
+        boolean[] merged = new boolean[cells.length];
+
+        for(int y = 0; y < rows; y++) {
+            for(int x = 0; x < columns; x++) {
+                int cell = y * columns + x;
+                byte type = cells[cell];
+                if(type == BlockStore.EMPTY || merged[cell])
+                    continue;
+
+                // Grow right, then down while the row below matches
+                int right = x + 1;
+                while(right < columns && cells[cell + right - x] == type && !merged[cell + right - x])
+                    right++;
+                int bottom = y + 1;
+                while(bottom < rows && matches(cells, merged, bottom * columns, x, right, type))
+                    bottom++;
+
+                for(int row = y; row < bottom; row++)
+                    Arrays.fill(merged, row * columns + x, row * columns + right, true);
+                rects.add(x, y, right, bottom, type);
+            }
+        }
+
+        rects.index();
+        return rects;
+    }
+
+    /**
+     * Getter of the number of rectangles
+     *
+     * @return Number of rectangles of the labyrinth.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Getter of the first entry of a tile in the rectangles of the tiles, the
+     * entries of the tile go up to the first one of the next tile.
+     *
+     * @param pTile Index of the tile (y * tile columns + x), up to the number of tiles.
+     * @return Index of the first entry.
+     * @see #getTileRect(int)
+     */
+    public int getTileStart(int pTile) {
+        return mTileStart[pTile];
+    }
+
+    /**
+     * Getter of a rectangle overlapping a tile
+     *
+     * @param pEntry Entry in the rectangles of the tiles.
+     * @return Index of the rectangle.
+     */
+    public int getTileRect(int pEntry) {
+        return mTileRects[pEntry];
+    }
+
+    /**
+     * Getter of the number of cells in each side of a tile
+     *
+     * @return Cells in a tile side.
+     */
+    public int getTileCells() {
+        return mTileCells;
+    }
+
+    /**
+     * Getter of the number of tiles in the X axis
+     *
+     * @return Number of tile columns.
+     */
+    public int getTileColumns() {
+        return mTileColumns;
+    }
+
+    /**
+     * Getter of the number of tiles in the Y axis
+     *
+     * @return Number of tile rows.
+     */
+    public int getTileRows() {
+        return mTileRows;
+    }
+
+    /**
+     * Getter of the number of cells in the X axis
+     *
+     * @return Number of columns.
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Getter of the number of cells in the Y axis
+     *
+     * @return Number of rows.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Getter of the left side of a rectangle
+     *
+     * @param pIndex Index of the rectangle.
+     * @return First column of the rectangle.
+     */
+    public int getLeft(int pIndex) {
+        return mLeft[pIndex];
+    }
+
+    /**
+     * Getter of the top side of a rectangle
+     *
+     * @param pIndex Index of the rectangle.
+     * @return First row of the rectangle.
+     */
+    public int getTop(int pIndex) {
+        return mTop[pIndex];
+    }
+
+    /**
+     * Getter of the right side of a rectangle
+     *
+     * @param pIndex Index of the rectangle.
+     * @return First column after the rectangle.
+     */
+    public int getRight(int pIndex) {
+        return mRight[pIndex];
+    }
+
+    /**
+     * Getter of the bottom side of a rectangle
+     *
+     * @param pIndex Index of the rectangle.
+     * @return First row after the rectangle.
+     */
+    public int getBottom(int pIndex) {
+        return mBottom[pIndex];
+    }
+
+    /**
+     * Getter of the type of the cells of a rectangle
+     *
+     * @param pIndex Index of the rectangle.
+     * @return Type of the cells.
+     */
+    public byte getType(int pIndex) {
+        return mType[pIndex];
+    }
+
+    /**
+     * Check a part of a row can be added to a rectangle.
+     *
+     * @return True if all cells have the type and are not merged yet.
+     */
+    private static boolean matches(byte[] pCells, boolean[] pMerged, int pRow, int pLeft, int pRight, byte pType) {
+        for(int cell = pRow + pLeft; cell < pRow + pRight; cell++) {
+            if(pCells[cell] != pType || pMerged[cell])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * List rectangles by tile, with a counting sort on the tiles they overlap.
+     */
+    private void index() {
+        for(int pass = 0; pass < 2; pass++) {
+            for(int i = 0; i < mCount; i++) {
+                int firstX = mLeft[i] / mTileCells;
+                int firstY = mTop[i] / mTileCells;
+                int lastX = (mRight[i] - 1) / mTileCells;
+                int lastY = (mBottom[i] - 1) / mTileCells;
+                for(int y = firstY; y <= lastY; y++) {
+                    for(int x = firstX; x <= lastX; x++) {
+                        int tile = y * mTileColumns + x;
+                        if(pass == 0)
+                            mTileStart[tile + 1]++;
+                        else
+                            mTileRects[mTileStart[tile]++] = i;
+                    }
+                }
+            }
+
+            if(pass == 0) {
+                for(int tile = 0; tile < mTileStart.length - 1; tile++)
+                    mTileStart[tile + 1] += mTileStart[tile];
+                mTileRects = new int[mTileStart[mTileStart.length - 1]];
+            } else {
+                // Starts moved to the end of each tile, shift them back
+                System.arraycopy(mTileStart, 0, mTileStart, 1, mTileStart.length - 1);
+                mTileStart[0] = 0;
+            }
+        }
+    }
+
+    private void add(int pLeft, int pTop, int pRight, int pBottom, byte pType) {
+        if(mCount == mLeft.length) {
+            mLeft = Arrays.copyOf(mLeft, mCount * 2);
+            mTop = Arrays.copyOf(mTop, mCount * 2);
+            mRight = Arrays.copyOf(mRight, mCount * 2);
+            mBottom = Arrays.copyOf(mBottom, mCount * 2);
+            mType = Arrays.copyOf(mType, mCount * 2);
+        }
+        mLeft[mCount] = pLeft;
+        mTop[mCount] = pTop;
+        mRight[mCount] = pRight;
+        mBottom[mCount] = pBottom;
+        mType[mCount] = pType;
+        mCount++;
+    }
+}
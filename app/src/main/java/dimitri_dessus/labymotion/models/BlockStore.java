@@ -0,0 +1,264 @@
+package dimitri_dessus.labymotion.models;
+
+/**
+ * Blocs of the labyrinth packed in a byte grid, one byte per cell, row by row.
+ * Rectangles are not stored, a cell spans [x * size, (x + 1) * size[ where size
+ * is twice the ball radius, so they are computed on demand.
+ *
+ * The grid is also the collision index: a lookup only visits the few cells
+ * overlapped by the ball, whatever the size of the maze. HOLE and END blocs
+ * end the game when the ball enters them, WALL blocs push it back.
+ *
+ * @see WallContacts
+ */
+
+public class BlockStore {
+
+    // Types of cell
+    public static final byte EMPTY  = 0;
+    public static final byte HOLE   = 1;
+    public static final byte START  = 2;
+    public static final byte END    = 3;
+    public static final byte WALL   = 4;
+
+    private final int mColumns;
+    private final int mRows;
+    private final byte[] mCells;
+
+    /**
+     * Constructor of BlockStore class, all cells are empty.
+     *
+     * @param pColumns Number of cells in the X axis.
+     * @param pRows Number of cells in the Y axis.
+     */
+    public BlockStore(int pColumns, int pRows) {
+        this(pColumns, pRows, new byte[pColumns * pRows]);
+    }
+
+    /**
+     * Constructor of BlockStore class using existing cells.
+     *
+     * @param pColumns Number of cells in the X axis.
+     * @param pRows Number of cells in the Y axis.
+     * @param pCells Type of each cell, row by row. Not copied.
+     */
+    public BlockStore(int pColumns, int pRows, byte[] pCells) {
+        if(pColumns < 0 || pRows < 0 || pCells.length != pColumns * pRows)
+            throw new IllegalArgumentException("Bad grid size " + pColumns + "x" + pRows);
+
+        this.mColumns = pColumns;
+        this.mRows = pRows;
+        this.mCells = pCells;
+    }
+
+    /**
+     * Getter of the number of cells in the X axis
+     *
+     * @return Number of columns.
+     */
+    public int getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * Getter of the number of cells in the Y axis
+     *
+     * @return Number of rows.
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Getter of the type of a cell
+     *
+     * @param pX Position of the cell in the X axis.
+     * @param pY Position of the cell in the Y axis.
+     * @return Type of the cell, EMPTY if out of the grid.
+     */
+    public byte getCell(int pX, int pY) {
+        if(pX < 0 || pY < 0 || pX >= mColumns || pY >= mRows)
+            return EMPTY;
+        return mCells[pY * mColumns + pX];
+    }
+
+    /**
+     * Setter of the type of a cell
+     *
+     * @param pX Position of the cell in the X axis.
+     * @param pY Position of the cell in the Y axis.
+     * @param pType New type of the cell.
+     */
+    public void setCell(int pX, int pY, byte pType) {
+        mCells[pY * mColumns + pX] = pType;
+    }
+
+    /**
+     * Getter of the cells, row by row. Not copied.
+     *
+     * @return Type of each cell.
+     */
+    public byte[] getCells() {
+        return mCells;
+    }
+
+    /**
+     * Find the first cell of a type, row by row.
+     *
+     * @param pType Type to look for.
+     * @return Index of the cell (y * columns + x), -1 if none.
+     */
+    public int indexOf(byte pType) {
+        for(int i = 0; i < mCells.length; i++) {
+            if(mCells[i] == pType)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the bloc overlapped by the ball hit box.
+     * If several blocs are hit, the first one row by row is returned.
+     *
+     * @param pX Ball position in the X axis.
+     * @param pY Ball position in the Y axis.
+     * @param pRadius Radius of the ball, half of the cell size.
+     * @param pCollision Filled with the bloc hit, time is always 1.
+     * @return True if a bloc has been hit.
+     * @see Collision
+     */
+    public boolean find(float pX, float pY, float pRadius, Collision pCollision) {
+        float size = pRadius * 2;
+        int left = Math.max((int) Math.floor((pX - pRadius) / size), 0);
+        int top = Math.max((int) Math.floor((pY - pRadius) / size), 0);
+        int right = Math.min((int) Math.floor((pX + pRadius) / size), mColumns - 1);
+        int bottom = Math.min((int) Math.floor((pY + pRadius) / size), mRows - 1);
+
+        for(int y = top; y <= bottom; y++) {
+            for(int x = left; x <= right; x++) {
+                byte type = mCells[y * mColumns + x];
+                if(type == EMPTY)
+                    continue;
+
+                if(pX - pRadius < (x + 1) * size && x * size < pX + pRadius
+                        && pY - pRadius < (y + 1) * size && y * size < pY + pRadius) {
+                    pCollision.set(type, x, y, 1);
+                    return true;
+                }
+            }
+        }
+
+        pCollision.set(EMPTY, -1, -1, -1);
+        return false;
+    }
+
+    /**
+     * Find the first HOLE or END bloc hit by the ball along its last step.
+     * Only cells overlapped by the ball hit box between its last and current
+     * positions are checked.
+     *
+     * @param pLastX Ball position in the X axis before the step.
+     * @param pLastY Ball position in the Y axis before the step.
+     * @param pX Ball position in the X axis after the step.
+     * @param pY Ball position in the Y axis after the step.
+     * @param pRadius Radius of the ball, half of the cell size.
+     * @param pCollision Filled with the bloc hit first and the time of impact.
+     * @return True if a bloc has been hit.
+     * @see Collision
+     */
+    public boolean sweep(float pLastX, float pLastY, float pX, float pY, float pRadius, Collision pCollision) {
+        return sweep(pLastX, pLastY, pX, pY, pRadius, pRadius * 2, pCollision);
+    }
+
+    /**
+     * Find the first HOLE or END bloc hit by a ball of any size along its last step.
+     *
+     * @param pLastX Ball position in the X axis before the step.
+     * @param pLastY Ball position in the Y axis before the step.
+     * @param pX Ball position in the X axis after the step.
+     * @param pY Ball position in the Y axis after the step.
+     * @param pRadius Radius of the ball.
+     * @param pSize Size of the cells.
+     * @param pCollision Filled with the bloc hit first and the time of impact.
+     * @return True if a bloc has been hit.
+     * @see Collision
+     */
+    public boolean sweep(float pLastX, float pLastY, float pX, float pY, float pRadius, float pSize, Collision pCollision) {
+        int left = Math.max((int) Math.floor((Math.min(pLastX, pX) - pRadius) / pSize), 0);
+        int top = Math.max((int) Math.floor((Math.min(pLastY, pY) - pRadius) / pSize), 0);
+        int right = Math.min((int) Math.floor((Math.max(pLastX, pX) + pRadius) / pSize), mColumns - 1);
+        int bottom = Math.min((int) Math.floor((Math.max(pLastY, pY) + pRadius) / pSize), mRows - 1);
+
+        int found = -1;
+        float time = -1;
+        for(int y = top; y <= bottom; y++) {
+            for(int x = left; x <= right; x++) {
+                // Start bloc doesn't end the game
+                byte type = mCells[y * mColumns + x];
+                if(type != HOLE && type != END)
+                    continue;
+
+                // Keep earliest hit, first bloc row by row on a tie
+                float t = sweepCell(pLastX, pLastY, pX, pY, pRadius, pSize, x, y);
+                if(t >= 0 && (found == -1 || t < time)) {
+                    found = y * mColumns + x;
+                    time = t;
+                }
+            }
+        }
+
+        if(found == -1) {
+            pCollision.set(EMPTY, -1, -1, -1);
+            return false;
+        }
+
+        pCollision.set(mCells[found], found % mColumns, found / mColumns, time);
+        return true;
+    }
+
+    /**
+     * Compute when the ball hit box, moving along a step, starts to overlap a cell.
+     * The cell is grown by the radius of the ball so the step can be tested as a segment,
+     * hence a fast ball can't go through a bloc between two positions.
+     *
+     * @return Time of impact between 0 (last position) and 1 (current position), -1 if no hit.
+     */
+    private static float sweepCell(float pLastX, float pLastY, float pX, float pY, float pRadius, float pSize, int pCellX, int pCellY) {
+        float left = pCellX * pSize - pRadius;
+        float top = pCellY * pSize - pRadius;
+        float right = (pCellX + 1) * pSize + pRadius;
+        float bottom = (pCellY + 1) * pSize + pRadius;
+
+        float dX = pX - pLastX;
+        float dY = pY - pLastY;
+        float enter = Float.NEGATIVE_INFINITY;
+        float exit = Float.POSITIVE_INFINITY;
+
+        // X axis
+        if(dX == 0) {
+            if(pLastX <= left || pLastX >= right)
+                return -1;
+        } else {
+            float t1 = (left - pLastX) / dX;
+            float t2 = (right - pLastX) / dX;
+            enter = Math.min(t1, t2);
+            exit = Math.max(t1, t2);
+        }
+
+        // Y axis
+        if(dY == 0) {
+            if(pLastY <= top || pLastY >= bottom)
+                return -1;
+        } else {
+            float t1 = (top - pLastY) / dY;
+            float t2 = (bottom - pLastY) / dY;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+
+        if(enter >= exit || enter > 1 || exit <= 0)
+            return -1;
+
+        return Math.max(enter, 0);
+    }
+}
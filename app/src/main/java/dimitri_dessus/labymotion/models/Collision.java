@@ -0,0 +1,66 @@
+package dimitri_dessus.labymotion.models;
+
+/**
+ * Result of a collision test: bloc hit first and time of impact.
+ * Reused from one physics step to another.
+ */
+
+public class Collision {
+
+    private byte mType = BlockStore.EMPTY;
+    private int mX = -1;
+    private int mY = -1;
+    private float mTime = -1;
+
+    /**
+     * Getter of the type of the bloc hit
+     *
+     * @return Type of the bloc hit first, EMPTY if none.
+     * @see BlockStore
+     */
+    public byte getType() {
+        return mType;
+    }
+
+    /**
+     * Getter of the position of the bloc hit in the X axis
+     *
+     * @return Column of the bloc, -1 if none.
+     */
+    public int getX() {
+        return mX;
+    }
+
+    /**
+     * Getter of the position of the bloc hit in the Y axis
+     *
+     * @return Row of the bloc, -1 if none.
+     */
+    public int getY() {
+        return mY;
+    }
+
+    /**
+     * Getter of the time of impact
+     *
+     * @return Fraction of the step when the ball hit the bloc, between 0 and 1.
+     */
+    public float getTime() {
+        return mTime;
+    }
+
+    /**
+     * Set the result of the test
+     *
+     * @param pType Type of the bloc hit, EMPTY if none.
+     * @param pX Column of the bloc.
+     * @param pY Row of the bloc.
+     * @param pTime Time of impact.
+     */
+    void set(byte pType, int pX, int pY, float pTime) {
+        this.mType = pType;
+        this.mX = pX;
+        this.mY = pY;
+        this.mTime = pTime;
+    }
+}
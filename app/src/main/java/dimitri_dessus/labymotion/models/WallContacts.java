@@ -0,0 +1,388 @@
+package dimitri_dessus.labymotion.models;
+
+import java.util.Arrays;
+
+/**
+ * Push a ball out of the WALL blocs it ran into during a physics step.
+ *
+ * The step is split in moves shorter than half the radius, so the centre of the
+ * ball never gets inside a wall, even for a small and fast ball. After each
+ * move, every wall overlapping the ball pushes it out along the normal of its
+ * closest point to the centre, by the penetration depth, and the rest of the
+ * step slides along the wall. Walls are solved one after the other for a few
+ * passes, which keeps the ball still in corners. Corners shared with another
+ * wall are not corners but the middle of a longer side, so the ball rolls
+ * smoothly along rows of walls.
+ * The speed then bounces on each wall touched, as on the sides of the screen.
+ *
+ * Walls around the ball are cached with the range of cells they were read from,
+ * and walls touched at the previous step are solved first: a ball resting on a
+ * wall is pushed out on the first pass, without reading the grid again. Only the
+ * cached walls a new read would give are solved, so the cache doesn't change results.
+ * Blocs must not change while cached, call clear() if they do.
+ *
+ * Reused from one physics step to another, by one thread.
+ */
+
+public class WallContacts {
+
+    // Passes over the walls around the ball after each move
+    private static final int ITERATIONS = 4;
+
+    // Overlap left after a pass that doesn't need another one
+    private static final float SLOP = 0.01f;
+
+    // Speed kept after a bounce on a wall, same as a bounce on the sides
+    private static final float RESTITUTION = 1 / Ball.REBOUND;
+
+    // Sides of a wall shared with another wall
+    private static final int LEFT   = 1;
+    private static final int RIGHT  = 2;
+    private static final int TOP    = 4;
+    private static final int BOTTOM = 8;
+
+    // Walls around the ball, and range of cells they were read from
+    private BlockStore mBlocks = null;
+    private float mSize = 0;
+    private int mLeft;
+    private int mTop;
+    private int mRight;
+    private int mBottom;
+    private int[] mWalls = new int[16];
+
+    // Range of cells of the step, cached walls outside are ignored
+    private int mStepLeft;
+    private int mStepTop;
+    private int mStepRight;
+    private int mStepBottom;
+
+    private byte[] mShared = new byte[16];
+    private int mWallCount = 0;
+
+    // Walls touched during the last step, with their normal
+    private int[] mContacts = new int[4];
+    private float[] mNormalX = new float[4];
+    private float[] mNormalY = new float[4];
+    private int mContactCount = 0;
+
+    // Result of the last step
+    private float mX;
+    private float mY;
+    private float mSpeedX;
+    private float mSpeedY;
+
+    /**
+     * Move a ball of a step, pushed out of the walls it meets.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @param pSize Size of the cells.
+     * @param pLastX Ball position in the X axis before the step.
+     * @param pLastY Ball position in the Y axis before the step.
+     * @param pX Ball position in the X axis after the step, without walls.
+     * @param pY Ball position in the Y axis after the step, without walls.
+     * @param pRadius Radius of the ball.
+     * @return True if the ball touched a wall, getX() and getY() are then its position after the step.
+     */
+    public boolean resolve(BlockStore pBlocks, float pSize, float pLastX, float pLastY, float pX, float pY, float pRadius) {
+        mX = pX;
+        mY = pY;
+
+        load(pBlocks, pSize, Math.min(pLastX, pX) - pRadius, Math.min(pLastY, pY) - pRadius,
+                Math.max(pLastX, pX) + pRadius, Math.max(pLastY, pY) + pRadius);
+        if(mWallCount == 0) {
+            mContactCount = 0;
+            return false;
+        }
+
+        // Solve walls touched at the previous step first
+        for(int c = 0, front = 0; c < mContactCount; c++) {
+            for(int i = front; i < mWallCount; i++) {
+                if(mWalls[i] == mContacts[c]) {
+                    byte shared = mShared[i];
+                    mWalls[i] = mWalls[front];
+                    mShared[i] = mShared[front];
+                    mWalls[front] = mContacts[c];
+                    mShared[front++] = shared;
+                    break;
+                }
+            }
+        }
+        mContactCount = 0;
+
+        // Moves short enough for the centre to stay out of the walls
+        float dX = pX - pLastX;
+        float dY = pY - pLastY;
+        int moves = Math.max((int) Math.ceil(Math.sqrt(dX * dX + dY * dY) * 2 / pRadius), 1);
+        dX /= moves;
+        dY /= moves;
+
+        float radius2 = pRadius * pRadius;
+        int columns = pBlocks.getColumns();
+        float x = pLastX;
+        float y = pLastY;
+        for(int m = 0; m < moves; m++) {
+            x += dX;
+            y += dY;
+
+            for(int pass = 0; pass < ITERATIONS; pass++) {
+                boolean again = false;
+                for(int i = 0; i < mWallCount; i++) {
+                    int cellX = mWalls[i] % columns;
+                    int cellY = mWalls[i] / columns;
+                    if(cellX < mStepLeft || cellX > mStepRight || cellY < mStepTop || cellY > mStepBottom)
+                        continue;
+
+                    int shared = mShared[i];
+                    float left = cellX * pSize;
+                    float top = cellY * pSize;
+
+                    // Closest point of the wall to the centre
+                    float offsetX = x - Math.min(Math.max(x, left), left + pSize);
+                    float offsetY = y - Math.min(Math.max(y, top), top + pSize);
+
+                    // Corner shared with another wall, the side goes on in the neighbour wall
+                    if(offsetX != 0 && offsetY != 0) {
+                        boolean sharedX = (shared & (offsetX < 0 ? LEFT : RIGHT)) != 0;
+                        boolean sharedY = (shared & (offsetY < 0 ? TOP : BOTTOM)) != 0;
+                        // Past the neighbour wall, or in front of two walls, the neighbours are closer
+                        if((sharedX && sharedY) || (sharedX && Math.abs(offsetX) > pSize)
+                                || (sharedY && Math.abs(offsetY) > pSize))
+                            continue;
+                        if(sharedX)
+                            offsetX = 0;
+                        else if(sharedY)
+                            offsetY = 0;
+                    }
+                    float distance2 = offsetX * offsetX + offsetY * offsetY;
+                    if(distance2 >= radius2)
+                        continue;
+
+                    float normalX;
+                    float normalY;
+                    float depth;
+                    if(distance2 > 0) {
+                        float distance = (float) Math.sqrt(distance2);
+                        normalX = offsetX / distance;
+                        normalY = offsetY / distance;
+                        depth = pRadius - distance;
+                    } else {
+                        // Centre inside, only after a push by another ball: leave by the nearest open side
+                        float exit = Float.POSITIVE_INFINITY;
+                        normalX = 0;
+                        normalY = -1;
+                        if((shared & LEFT) == 0 && x - left < exit) {
+                            exit = x - left;
+                            normalX = -1;
+                            normalY = 0;
+                        }
+                        if((shared & RIGHT) == 0 && left + pSize - x < exit) {
+                            exit = left + pSize - x;
+                            normalX = 1;
+                            normalY = 0;
+                        }
+                        if((shared & TOP) == 0 && y - top < exit) {
+                            exit = y - top;
+                            normalX = 0;
+                            normalY = -1;
+                        }
+                        if((shared & BOTTOM) == 0 && top + pSize - y < exit) {
+                            exit = top + pSize - y;
+                            normalX = 0;
+                            normalY = 1;
+                        }
+                        depth = (exit == Float.POSITIVE_INFINITY ? y - top : exit) + pRadius;
+                    }
+
+                    x += normalX * depth;
+                    y += normalY * depth;
+                    addContact(mWalls[i], normalX, normalY);
+                    if(depth > SLOP)
+                        again = true;
+
+                    // Rest of the step slides along the wall
+                    float into = dX * normalX + dY * normalY;
+                    if(into < 0) {
+                        dX -= into * normalX;
+                        dY -= into * normalY;
+                    }
+                }
+                if(!again)
+                    break;
+            }
+        }
+
+        mX = x;
+        mY = y;
+        return mContactCount > 0;
+    }
+
+    /**
+     * Bounce a speed on the walls touched during the last step.
+     *
+     * @param pSpeedX Speed in the X axis of the screen.
+     * @param pSpeedY Speed in the Y axis of the screen.
+     */
+    public void bounce(float pSpeedX, float pSpeedY) {
+        for(int c = 0; c < mContactCount; c++) {
+            float into = pSpeedX * mNormalX[c] + pSpeedY * mNormalY[c];
+            if(into < 0) {
+                pSpeedX -= (1 + RESTITUTION) * into * mNormalX[c];
+                pSpeedY -= (1 + RESTITUTION) * into * mNormalY[c];
+            }
+        }
+        mSpeedX = pSpeedX;
+        mSpeedY = pSpeedY;
+    }
+
+    /**
+     * Forget cached walls, needed when blocs change.
+     */
+    public void clear() {
+        mBlocks = null;
+        mWallCount = 0;
+        mContactCount = 0;
+    }
+
+    /**
+     * Forget walls touched at the previous step, keeping cached walls.
+     * Needed when the next step moves another ball.
+     */
+    public void clearContacts() {
+        mContactCount = 0;
+    }
+
+    /**
+     * Getter of the position in the X axis after the last step
+     *
+     * @return Position in the X axis.
+     */
+    public float getX() {
+        return mX;
+    }
+
+    /**
+     * Getter of the position in the Y axis after the last step
+     *
+     * @return Position in the Y axis.
+     */
+    public float getY() {
+        return mY;
+    }
+
+    /**
+     * Getter of the speed in the X axis of the screen after the last bounce
+     *
+     * @return Speed in the X axis.
+     */
+    public float getSpeedX() {
+        return mSpeedX;
+    }
+
+    /**
+     * Getter of the speed in the Y axis of the screen after the last bounce
+     *
+     * @return Speed in the Y axis.
+     */
+    public float getSpeedY() {
+        return mSpeedY;
+    }
+
+    /**
+     * Getter of the number of walls touched during the last step
+     *
+     * @return Number of walls.
+     */
+    public int getContactCount() {
+        return mContactCount;
+    }
+
+    /**
+     * Getter of the normal of a wall touched, pointing out of the wall
+     *
+     * @param pIndex Index of the contact.
+     * @return Normal in the X axis.
+     */
+    public float getNormalX(int pIndex) {
+        return mNormalX[pIndex];
+    }
+
+    /**
+     * Getter of the normal of a wall touched, pointing out of the wall
+     *
+     * @param pIndex Index of the contact.
+     * @return Normal in the Y axis.
+     */
+    public float getNormalY(int pIndex) {
+        return mNormalY[pIndex];
+    }
+
+    /**
+     * Read the walls of a range of cells, unless the cached range covers it.
+     * One more cell is read on each side, so small moves keep using the cache.
+     */
+    private void load(BlockStore pBlocks, float pSize, float pLeft, float pTop, float pRight, float pBottom) {
+        int left = (int) Math.floor(pLeft / pSize);
+        int top = (int) Math.floor(pTop / pSize);
+        int right = (int) Math.floor(pRight / pSize);
+        int bottom = (int) Math.floor(pBottom / pSize);
+        mStepLeft = left;
+        mStepTop = top;
+        mStepRight = right;
+        mStepBottom = bottom;
+        if(pBlocks == mBlocks && pSize == mSize
+                && left >= mLeft && top >= mTop && right <= mRight && bottom <= mBottom)
+            return;
+
+        mBlocks = pBlocks;
+        mSize = pSize;
+        mLeft = left - 1;
+        mTop = top - 1;
+        mRight = right + 1;
+        mBottom = bottom + 1;
+        mWallCount = 0;
+
+        int columns = pBlocks.getColumns();
+        for(int y = Math.max(mTop, 0); y <= Math.min(mBottom, pBlocks.getRows() - 1); y++) {
+            for(int x = Math.max(mLeft, 0); x <= Math.min(mRight, columns - 1); x++) {
+                if(pBlocks.getCell(x, y) != BlockStore.WALL)
+                    continue;
+                if(mWallCount == mWalls.length) {
+                    mWalls = Arrays.copyOf(mWalls, mWallCount * 2);
+                    mShared = Arrays.copyOf(mShared, mWallCount * 2);
+                }
+
+                int shared = 0;
+                if(pBlocks.getCell(x - 1, y) == BlockStore.WALL)
+                    shared |= LEFT;
+                if(pBlocks.getCell(x + 1, y) == BlockStore.WALL)
+                    shared |= RIGHT;
+                if(pBlocks.getCell(x, y - 1) == BlockStore.WALL)
+                    shared |= TOP;
+                if(pBlocks.getCell(x, y + 1) == BlockStore.WALL)
+                    shared |= BOTTOM;
+                mWalls[mWallCount] = y * columns + x;
+                mShared[mWallCount++] = (byte) shared;
+            }
+        }
+    }
+
+    private void addContact(int pCell, float pNormalX, float pNormalY) {
+        for(int c = 0; c < mContactCount; c++) {
+            if(mContacts[c] == pCell) {
+                mNormalX[c] = pNormalX;
+                mNormalY[c] = pNormalY;
+                return;
+            }
+        }
+
+        if(mContactCount == mContacts.length) {
+            mContacts = Arrays.copyOf(mContacts, mContactCount * 2);
+            mNormalX = Arrays.copyOf(mNormalX, mContactCount * 2);
+            mNormalY = Arrays.copyOf(mNormalY, mContactCount * 2);
+        }
+        mContacts[mContactCount] = pCell;
+        mNormalX[mContactCount] = pNormalX;
+        mNormalY[mContactCount] = pNormalY;
+        mContactCount++;
+    }
+}
@@ -0,0 +1,272 @@
+package dimitri_dessus.labymotion.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import dimitri_dessus.labymotion.levels.LevelLoader;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Write every input of a game to a compact binary trace.
+ *
+ * Format: "LBYR" magic and version byte, then one record per input, starting
+ * with its type byte:
+ * - LEVEL: ball radius as float, length of the level as int, level in LevelLoader binary format.
+ * - SIZE: width and height of the area where the ball moves as ints.
+ * - RESUME: physics step in nanoseconds as varint.
+ * - RESET: nothing.
+ * - ACCELEROMETER, MAGNETIC: timestamp, then X, Y and Z as floats.
+ * - LIGHT: timestamp, then luminosity as float.
+ * - COLORS_RESET: nothing, since version 2.
+ * - STATE: length of the state as int, then the state saved by GameSimulation, since version 3.
+ * Timestamps are written as a zigzag varint of the difference with the previous
+ * timestamp, 3 or 4 bytes at usual sensor rates.
+ *
+ * Samples come from the physics thread and the UI thread, so each record is
+ * written under lock. Writing errors stop the recording without failing the game.
+ *
+ * @see TraceReplay
+ */
+
+public class TraceRecorder {
+
+    // Header of trace files
+    static final byte[] MAGIC       = { 'L', 'B', 'Y', 'R' };
+    static final int VERSION        = 3;
+
+    // Record types
+    static final int LEVEL          = 0;
+    static final int SIZE           = 1;
+    static final int RESUME         = 2;
+    static final int RESET          = 3;
+    static final int ACCELEROMETER  = 4;
+    static final int LIGHT          = 5;
+    static final int MAGNETIC       = 6;
+    static final int COLORS_RESET   = 7;
+    static final int STATE          = 8;
+
+    private final DataOutputStream mOutput;
+    private long mLastTimestamp = 0;
+    private IOException mError = null;
+
+    /**
+     * Constructor of TraceRecorder class, writes the header.
+     *
+     * @param pOutput Stream of the trace file, closed with the recorder.
+     * @throws IOException If the header can't be written.
+     */
+    public TraceRecorder(OutputStream pOutput) throws IOException {
+        mOutput = new DataOutputStream(new BufferedOutputStream(pOutput));
+        mOutput.write(MAGIC);
+        mOutput.writeByte(VERSION);
+    }
+
+    /**
+     * Record the labyrinth being played, the ball goes back to its start bloc.
+     *
+     * @param pBlocks Blocs of the labyrinth.
+     * @param pRadius Radius of the ball.
+     */
+    public synchronized void recordLevel(BlockStore pBlocks, float pRadius) {
+        if(mError != null)
+            return;
+        try {
+            ByteArrayOutputStream level = new ByteArrayOutputStream();
+            LevelLoader.write(pBlocks, level);
+
+            mOutput.writeByte(LEVEL);
+            mOutput.writeFloat(pRadius);
+            mOutput.writeInt(level.size());
+            level.writeTo(mOutput);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Record a change of the area where the ball moves.
+     *
+     * @param pWidth Width of the area.
+     * @param pHeight Height of the area.
+     */
+    public synchronized void recordSize(int pWidth, int pHeight) {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(SIZE);
+            mOutput.writeInt(pWidth);
+            mOutput.writeInt(pHeight);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Record the start of a run.
+     *
+     * @param pTimeStep Physics step of the run in nanoseconds.
+     */
+    public synchronized void recordResume(long pTimeStep) {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(RESUME);
+            writeVarLong(pTimeStep);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Record the ball going back to its original position.
+     */
+    public synchronized void recordReset() {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(RESET);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Record a saved game restored on the labyrinth being played.
+     *
+     * @param pState State saved by GameSimulation.
+     * @see dimitri_dessus.labymotion.engines.GameSimulation#restoreState(byte[])
+     */
+    public synchronized void recordState(byte[] pState) {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(STATE);
+            mOutput.writeInt(pState.length);
+            mOutput.write(pState);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Record an accelerometer sample.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pX Acceleration in the X axis.
+     * @param pY Acceleration in the Y axis.
+     * @param pZ Acceleration in the Z axis.
+     */
+    public synchronized void recordAccelerometer(long pTimestamp, float pX, float pY, float pZ) {
+        recordVector(ACCELEROMETER, pTimestamp, pX, pY, pZ);
+    }
+
+    /**
+     * Record a magnetic sensor sample.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pX Magnetic field in the X axis.
+     * @param pY Magnetic field in the Y axis.
+     * @param pZ Magnetic field in the Z axis.
+     */
+    public synchronized void recordMagnetic(long pTimestamp, float pX, float pY, float pZ) {
+        recordVector(MAGNETIC, pTimestamp, pX, pY, pZ);
+    }
+
+    /**
+     * Record a light sensor sample.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pLuminosity Luminosity in lux.
+     */
+    public synchronized void recordLight(long pTimestamp, float pLuminosity) {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(LIGHT);
+            writeTimestamp(pTimestamp);
+            mOutput.writeFloat(pLuminosity);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Record the light and magnetic filters forgetting previous samples.
+     */
+    public synchronized void recordColorsReset() {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(COLORS_RESET);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    /**
+     * Write buffered records to the stream.
+     *
+     * @throws IOException If a record or the stream couldn't be written.
+     */
+    public synchronized void flush() throws IOException {
+        if(mError != null)
+            throw mError;
+        mOutput.flush();
+    }
+
+    /**
+     * Write buffered records and close the stream.
+     *
+     * @throws IOException If a record or the stream couldn't be written.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            mOutput.close();
+        }
+    }
+
+    /**
+     * Getter of the error which stopped the recording
+     *
+     * @return First writing error, null if none.
+     */
+    public synchronized IOException getError() {
+        return mError;
+    }
+
+    private void recordVector(int pType, long pTimestamp, float pX, float pY, float pZ) {
+        if(mError != null)
+            return;
+        try {
+            mOutput.writeByte(pType);
+            writeTimestamp(pTimestamp);
+            mOutput.writeFloat(pX);
+            mOutput.writeFloat(pY);
+            mOutput.writeFloat(pZ);
+        } catch (IOException e) {
+            mError = e;
+        }
+    }
+
+    private void writeTimestamp(long pTimestamp) throws IOException {
+        long delta = pTimestamp - mLastTimestamp;
+        mLastTimestamp = pTimestamp;
+
+        // Zigzag, samples of different sensors may come slightly out of order
+        writeVarLong((delta << 1) ^ (delta >> 63));
+    }
+
+    private void writeVarLong(long pValue) throws IOException {
+        // 7 bits per byte, high bit set when more bytes follow
+        while((pValue & ~0x7FL) != 0) {
+            mOutput.writeByte((int) (pValue & 0x7F) | 0x80);
+            pValue >>>= 7;
+        }
+        mOutput.writeByte((int) pValue);
+    }
+}
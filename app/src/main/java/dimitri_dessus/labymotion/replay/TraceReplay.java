@@ -0,0 +1,205 @@
+package dimitri_dessus.labymotion.replay;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import dimitri_dessus.labymotion.engines.GameSimulation;
+import dimitri_dessus.labymotion.levels.LevelLoader;
+import dimitri_dessus.labymotion.levels.PreparedLevel;
+import dimitri_dessus.labymotion.models.Ball;
+import dimitri_dessus.labymotion.sensors.ColorLevels;
+
+/**
+ * Play a recorded trace again without any device.
+ *
+ * Records are fed to the same simulation and color levels as the game, as fast
+ * as they can be read, so the outcomes (game events, final ball position and
+ * color levels) are the ones of the recorded game.
+ * Ball.RADIUS is set from the trace, traces recorded with different radii must
+ * not be played at the same time.
+ *
+ * @see TraceRecorder
+ */
+
+public class TraceReplay {
+
+    private final Ball mBall = new Ball();
+    private final GameSimulation mSimulation = new GameSimulation();
+    private final ColorLevels mColors = new ColorLevels();
+
+    // Events returned by the simulation, in order
+    private int[] mEventTypes = new int[16];
+    private long[] mEventTimestamps = new long[16];
+    private int mEventCount = 0;
+
+    private long mSampleCount = 0;
+
+    /**
+     * Constructor of TraceReplay class
+     */
+    public TraceReplay() {
+        mSimulation.setBall(mBall);
+    }
+
+    /**
+     * Play a trace.
+     *
+     * @param pInput Stream of the trace file, not closed.
+     * @throws IOException If the stream can't be read or the trace is malformed.
+     */
+    public void run(InputStream pInput) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(pInput));
+
+        for(byte b : TraceRecorder.MAGIC) {
+            if(input.readByte() != b)
+                throw new IOException("Not a trace file");
+        }
+        int version = input.readUnsignedByte();
+        // Later versions only add records
+        if(version < 1 || version > TraceRecorder.VERSION)
+            throw new IOException("Unsupported trace version " + version);
+
+        long timestamp = 0;
+        int type;
+        while((type = input.read()) != -1) {
+            switch(type) {
+                case TraceRecorder.LEVEL:
+                    Ball.RADIUS = input.readFloat();
+                    byte[] level = new byte[input.readInt()];
+                    input.readFully(level);
+                    mSimulation.setBlocks(LevelLoader.load(new ByteArrayInputStream(level)));
+                    break;
+                case TraceRecorder.SIZE:
+                    mBall.setWidth(input.readInt());
+                    mBall.setHeight(input.readInt());
+                    break;
+                case TraceRecorder.RESUME:
+                    mSimulation.setTimeStep(readVarLong(input));
+                    mSimulation.resume();
+                    break;
+                case TraceRecorder.RESET:
+                    mSimulation.reset();
+                    break;
+                case TraceRecorder.ACCELEROMETER:
+                    timestamp = readTimestamp(input, timestamp);
+                    mSampleCount++;
+                    int event = mSimulation.addSample(timestamp, input.readFloat(), input.readFloat(), input.readFloat());
+                    if(event != GameSimulation.NONE)
+                        addEvent(event, timestamp);
+                    break;
+                case TraceRecorder.LIGHT:
+                    timestamp = readTimestamp(input, timestamp);
+                    mSampleCount++;
+                    mColors.addLuminosity(timestamp, input.readFloat());
+                    break;
+                case TraceRecorder.MAGNETIC:
+                    timestamp = readTimestamp(input, timestamp);
+                    mSampleCount++;
+                    mColors.addMagnetic(timestamp, input.readFloat(), input.readFloat(), input.readFloat());
+                    break;
+                case TraceRecorder.COLORS_RESET:
+                    mColors.reset();
+                    break;
+                case TraceRecorder.STATE:
+                    byte[] state = new byte[input.readInt()];
+                    input.readFully(state);
+                    // Traces only hold the blocs of the level, its index is in the state
+                    int index = GameSimulation.getSavedLevel(state);
+                    if(index != -1 && mSimulation.getBlocks() != null)
+                        mSimulation.setLevel(PreparedLevel.prepare(index, mSimulation.getBlocks()));
+                    if(!mSimulation.restoreState(state))
+                        throw new IOException("Saved game of another level in trace");
+                    break;
+                default:
+                    throw new IOException("Unknown trace record " + type);
+            }
+        }
+    }
+
+    /**
+     * Getter of the number of events
+     *
+     * @return Number of DEFEAT, VICTORY and WALKING events.
+     */
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    /**
+     * Getter of an event type
+     *
+     * @param pIndex Index of the event.
+     * @return Event type, one of the GameSimulation outcomes.
+     * @see GameSimulation
+     */
+    public int getEventType(int pIndex) {
+        return mEventTypes[pIndex];
+    }
+
+    /**
+     * Getter of the time of an event
+     *
+     * @param pIndex Index of the event.
+     * @return Timestamp of the sample causing the event in nanoseconds.
+     */
+    public long getEventTimestamp(int pIndex) {
+        return mEventTimestamps[pIndex];
+    }
+
+    /**
+     * Getter of the number of sensor samples played
+     *
+     * @return Number of accelerometer, light and magnetic samples.
+     */
+    public long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Getter of the ball, at its final position after the trace
+     *
+     * @return Ball object.
+     */
+    public Ball getBall() {
+        return mBall;
+    }
+
+    /**
+     * Getter of the color levels after the trace
+     *
+     * @return Color levels.
+     */
+    public ColorLevels getColors() {
+        return mColors;
+    }
+
+    private void addEvent(int pType, long pTimestamp) {
+        if(mEventCount == mEventTypes.length) {
+            mEventTypes = Arrays.copyOf(mEventTypes, mEventCount * 2);
+            mEventTimestamps = Arrays.copyOf(mEventTimestamps, mEventCount * 2);
+        }
+        mEventTypes[mEventCount] = pType;
+        mEventTimestamps[mEventCount] = pTimestamp;
+        mEventCount++;
+    }
+
+    private static long readTimestamp(DataInputStream pInput, long pPrevious) throws IOException {
+        long zigzag = readVarLong(pInput);
+        return pPrevious + ((zigzag >>> 1) ^ -(zigzag & 1));
+    }
+
+    private static long readVarLong(DataInputStream pInput) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            int b = pInput.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint in trace");
+    }
+}
@@ -0,0 +1,103 @@
+package dimitri_dessus.labymotion.sensors;
+
+/**
+ * Turn a noisy sensor value into a stable level.
+ *
+ * Samples closer than the minimum interval are ignored, the others go through
+ * a low-pass filter. The filtered value is split in levels by thresholds, and
+ * leaving the current level requires to cross its threshold by the hysteresis
+ * margin, so a value hovering around a threshold doesn't flip between levels.
+ */
+
+public class BucketFilter {
+
+    private final float[] mThresholds;
+    private final float mHysteresis;
+    private final float mSmoothing;
+    private final long mMinInterval;
+
+    private float mValue = 0;
+    private int mBucket = -1;
+    private long mLastTimestamp = 0;
+
+    /**
+     * Constructor of BucketFilter class
+     *
+     * @param pThresholds Ascending upper bounds of each level, a value equal to a bound is in the lower level.
+     * @param pHysteresis Margin to cross beyond a bound before changing level.
+     * @param pSmoothing Weight of a new sample in the filtered value, 1 disables the filter.
+     * @param pMinInterval Min time between two samples in nanoseconds, 0 keeps every sample.
+     */
+    public BucketFilter(float[] pThresholds, float pHysteresis, float pSmoothing, long pMinInterval) {
+        if(pSmoothing <= 0 || pSmoothing > 1)
+            throw new IllegalArgumentException("Smoothing must be in ]0, 1]");
+
+        this.mThresholds = pThresholds.clone();
+        this.mHysteresis = pHysteresis;
+        this.mSmoothing = pSmoothing;
+        this.mMinInterval = pMinInterval;
+    }
+
+    /**
+     * Add a sensor sample.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pValue Value of the sample.
+     * @return True if the level changed.
+     */
+    public boolean addSample(long pTimestamp, float pValue) {
+        if(mBucket == -1) {
+            // First sample sets the level directly
+            mValue = pValue;
+            mLastTimestamp = pTimestamp;
+            mBucket = 0;
+            while(mBucket < mThresholds.length && mValue > mThresholds[mBucket])
+                mBucket++;
+            return true;
+        }
+
+        if(pTimestamp - mLastTimestamp < mMinInterval)
+            return false;
+        mLastTimestamp = pTimestamp;
+
+        mValue += mSmoothing * (pValue - mValue);
+
+        int bucket = mBucket;
+        while(bucket < mThresholds.length && mValue > mThresholds[bucket] + mHysteresis)
+            bucket++;
+        while(bucket > 0 && mValue <= mThresholds[bucket - 1] - mHysteresis)
+            bucket--;
+
+        if(bucket == mBucket)
+            return false;
+        mBucket = bucket;
+        return true;
+    }
+
+    /**
+     * Getter of the current level
+     *
+     * @return Level from 0 to the number of thresholds, -1 before the first sample.
+     */
+    public int getBucket() {
+        return mBucket;
+    }
+
+    /**
+     * Getter of the filtered value
+     *
+     * @return Filtered value.
+     */
+    public float getValue() {
+        return mValue;
+    }
+
+    /**
+     * Forget previous samples, next sample sets the level directly.
+     */
+    public void reset() {
+        mBucket = -1;
+        mValue = 0;
+        mLastTimestamp = 0;
+    }
+}
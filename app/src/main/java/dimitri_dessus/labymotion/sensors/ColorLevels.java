@@ -0,0 +1,105 @@
+package dimitri_dessus.labymotion.sensors;
+
+import java.util.concurrent.TimeUnit;
+
+import dimitri_dessus.labymotion.replay.TraceRecorder;
+
+/**
+ * Levels of light and magnetic field choosing the surface and ball colors.
+ * Samples closer than 100 ms are ignored, others are filtered with a margin between levels.
+ *
+ * @see BucketFilter
+ */
+
+public class ColorLevels {
+
+    // Upper bounds of luminosity levels in lux
+    public static final float[] LUMINOSITY_LEVELS = {100.0f, 200.0f, 290.0f};
+
+    // Upper bounds of magnetic field levels in uT
+    public static final float[] MAGNETIC_LEVELS = {100.0f, 200.0f, 300.0f};
+
+    private static final long SAMPLE_INTERVAL           = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final float SMOOTHING                = 0.3f;
+    private static final float LUMINOSITY_HYSTERESIS    = 10.0f;
+    private static final float MAGNETIC_HYSTERESIS      = 5.0f;
+
+    private final BucketFilter mLuminosity = new BucketFilter(LUMINOSITY_LEVELS,
+            LUMINOSITY_HYSTERESIS, SMOOTHING, SAMPLE_INTERVAL);
+    private final BucketFilter mMagnetic = new BucketFilter(MAGNETIC_LEVELS,
+            MAGNETIC_HYSTERESIS, SMOOTHING, SAMPLE_INTERVAL);
+
+    // Optional trace of every sample
+    private TraceRecorder mRecorder = null;
+
+    /**
+     * Add a light sensor sample.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pLuminosity Luminosity in lux.
+     * @return True if the luminosity level changed.
+     */
+    public boolean addLuminosity(long pTimestamp, float pLuminosity) {
+        if(mRecorder != null)
+            mRecorder.recordLight(pTimestamp, pLuminosity);
+
+        return mLuminosity.addSample(pTimestamp, pLuminosity);
+    }
+
+    /**
+     * Add a magnetic sensor sample.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pX Magnetic field in the X axis.
+     * @param pY Magnetic field in the Y axis.
+     * @param pZ Magnetic field in the Z axis.
+     * @return True if the magnetic field level changed.
+     */
+    public boolean addMagnetic(long pTimestamp, float pX, float pY, float pZ) {
+        if(mRecorder != null)
+            mRecorder.recordMagnetic(pTimestamp, pX, pY, pZ);
+
+        float magnetic = (float) Math.sqrt((double) (pX * pX + pY * pY + pZ * pZ));
+        return mMagnetic.addSample(pTimestamp, magnetic);
+    }
+
+    /**
+     * Forget previous samples, next samples set the levels directly.
+     * Levels are -1 until then.
+     */
+    public void reset() {
+        if(mRecorder != null)
+            mRecorder.recordColorsReset();
+
+        mLuminosity.reset();
+        mMagnetic.reset();
+    }
+
+    /**
+     * Getter of the luminosity level
+     *
+     * @return Level from 0 to the length of LUMINOSITY_LEVELS, -1 before the first sample.
+     */
+    public int getLuminosityLevel() {
+        return mLuminosity.getBucket();
+    }
+
+    /**
+     * Getter of the magnetic field level
+     *
+     * @return Level from 0 to the length of MAGNETIC_LEVELS, -1 before the first sample.
+     */
+    public int getMagneticLevel() {
+        return mMagnetic.getBucket();
+    }
+
+    /**
+     * Record every sample from now on.
+     *
+     * @param pRecorder Trace to write, null to stop recording.
+     * @see TraceRecorder
+     */
+    public void setRecorder(TraceRecorder pRecorder) {
+        this.mRecorder = pRecorder;
+    }
+}
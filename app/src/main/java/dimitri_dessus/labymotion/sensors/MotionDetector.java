@@ -0,0 +1,174 @@
+package dimitri_dessus.labymotion.sensors;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detect if the player is walking from accelerometer samples.
+ *
+ * Tilting the device only rotates gravity, walking makes the length of the
+ * acceleration vector bounce. The squared length of each sample (no square root)
+ * is kept in a ring buffer, and its mean and variance over the window are updated
+ * in O(1) per sample with Welford's sliding formulas. The player is walking
+ * while the variance is above the threshold.
+ */
+
+public class MotionDetector {
+
+    // Default window, half a second at SENSOR_DELAY_GAME rate
+    public static final int DEFAULT_WINDOW = 25;
+
+    // Default threshold, standard deviation of the acceleration length in m/s^2
+    public static final float DEFAULT_THRESHOLD = 0.5f;
+
+    // Standard gravity, in m/s^2
+    private static final double GRAVITY = 9.80665;
+
+    private final double[] mSamples;
+    private final double mVarianceLimit;
+    private int mCount = 0;
+    private int mNext = 0;
+
+    // Mean and sum of squared differences of the window
+    private double mMean = 0;
+    private double mM2 = 0;
+
+    /**
+     * Constructor of MotionDetector class with default window and threshold.
+     */
+    public MotionDetector() {
+        this(DEFAULT_WINDOW, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor of MotionDetector class
+     *
+     * @param pWindow Number of samples in the window.
+     * @param pThreshold Standard deviation of the acceleration length (m/s^2) above which the player is walking.
+     */
+    public MotionDetector(int pWindow, float pThreshold) {
+        if(pWindow < 2)
+            throw new IllegalArgumentException("Window must hold at least 2 samples");
+
+        this.mSamples = new double[pWindow];
+
+        // Near gravity, |a|^2 = g^2 + 2g.d|a| so its deviation is 2g times the one of |a|
+        double limit = 2 * GRAVITY * pThreshold;
+        this.mVarianceLimit = limit * limit;
+    }
+
+    /**
+     * Add an accelerometer sample.
+     *
+     * @param pX Acceleration in the X axis.
+     * @param pY Acceleration in the Y axis.
+     * @param pZ Acceleration in the Z axis.
+     * @return True if the player is walking.
+     */
+    public boolean addSample(float pX, float pY, float pZ) {
+        double value = (double) pX * pX + (double) pY * pY + (double) pZ * pZ;
+
+        if(mCount < mSamples.length) {
+            // Window is filling
+            mCount++;
+            double delta = value - mMean;
+            mMean += delta / mCount;
+            mM2 += delta * (value - mMean);
+        } else {
+            // Replace oldest sample
+            double old = mSamples[mNext];
+            double oldMean = mMean;
+            mMean += (value - old) / mCount;
+            mM2 += (value - old) * (value - mMean + old - oldMean);
+            if(mM2 < 0)
+                mM2 = 0;
+        }
+
+        mSamples[mNext] = value;
+        mNext = mNext + 1 == mSamples.length ? 0 : mNext + 1;
+
+        return isWalking();
+    }
+
+    /**
+     * Check if the player is walking, only once the window is full.
+     *
+     * @return True if the player is walking.
+     */
+    public boolean isWalking() {
+        return mCount == mSamples.length && mM2 > mVarianceLimit * (mCount - 1);
+    }
+
+    /**
+     * Getter of the mean squared acceleration length over the window
+     *
+     * @return Mean of |a|^2 in (m/s^2)^2.
+     */
+    public double getMean() {
+        return mMean;
+    }
+
+    /**
+     * Getter of the variance of the squared acceleration length over the window
+     *
+     * @return Sample variance of |a|^2, 0 if less than 2 samples.
+     */
+    public double getVariance() {
+        return mCount < 2 ? 0 : mM2 / (mCount - 1);
+    }
+
+    /**
+     * Getter of the number of bytes written by writeState
+     *
+     * @return Size of the state.
+     */
+    public int getStateSize() {
+        return 3 * 4 + 2 * 8 + mSamples.length * 8;
+    }
+
+    /**
+     * Write the window and its running mean and variance, so detection goes on
+     * where it was after readState.
+     *
+     * @param pBuffer Buffer to write getStateSize() bytes to.
+     */
+    public void writeState(ByteBuffer pBuffer) {
+        pBuffer.putInt(mSamples.length);
+        pBuffer.putInt(mCount);
+        pBuffer.putInt(mNext);
+        pBuffer.putDouble(mMean);
+        pBuffer.putDouble(mM2);
+        for(double sample : mSamples)
+            pBuffer.putDouble(sample);
+    }
+
+    /**
+     * Read the state written by writeState.
+     *
+     * @param pBuffer Buffer to read getStateSize() bytes from.
+     * @throws IllegalArgumentException If the state has another window size.
+     */
+    public void readState(ByteBuffer pBuffer) {
+        int window = pBuffer.getInt();
+        int count = pBuffer.getInt();
+        int next = pBuffer.getInt();
+        if(window != mSamples.length || count < 0 || count > window || next < 0 || next >= window)
+            throw new IllegalArgumentException("Bad walking detector state");
+
+        mCount = count;
+        mNext = next;
+        mMean = pBuffer.getDouble();
+        mM2 = pBuffer.getDouble();
+        for(int i = 0; i < mSamples.length; i++)
+            mSamples[i] = pBuffer.getDouble();
+    }
+
+    /**
+     * Forget all samples.
+     */
+    public void reset() {
+        mCount = 0;
+        mNext = 0;
+        mMean = 0;
+        mM2 = 0;
+    }
+}
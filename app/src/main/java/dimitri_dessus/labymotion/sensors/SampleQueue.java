@@ -0,0 +1,141 @@
+package dimitri_dessus.labymotion.sensors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of timestamped accelerometer samples from the sensor thread to the physics thread.
+ *
+ * Ring buffer of primitives with one producer and one consumer: each side only
+ * moves its own counter, so no lock and no allocation is needed. When sensor
+ * events are batched by the hardware, a whole batch is queued at once and the
+ * physics thread processes it in one pass.
+ */
+
+public class SampleQueue {
+
+    private final int mMask;
+    private final long[] mTimestamps;
+    private final float[] mX;
+    private final float[] mY;
+    private final float[] mZ;
+
+    // Number of samples read by the consumer and written by the producer
+    private final AtomicLong mHead = new AtomicLong();
+    private final AtomicLong mTail = new AtomicLong();
+
+    // Samples dropped because the queue was full
+    private volatile long mDropped = 0;
+
+    /**
+     * Constructor of SampleQueue class
+     *
+     * @param pCapacity Max number of samples waiting, rounded up to a power of 2.
+     */
+    public SampleQueue(int pCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(pCapacity, 2) - 1) << 1;
+        this.mMask = capacity - 1;
+        this.mTimestamps = new long[capacity];
+        this.mX = new float[capacity];
+        this.mY = new float[capacity];
+        this.mZ = new float[capacity];
+    }
+
+    /**
+     * Add a sample. Called by the producer.
+     *
+     * @param pTimestamp Time of the sample in nanoseconds.
+     * @param pX Acceleration in the X axis.
+     * @param pY Acceleration in the Y axis.
+     * @param pZ Acceleration in the Z axis.
+     * @return False if the queue is full, the sample is dropped.
+     */
+    public boolean offer(long pTimestamp, float pX, float pY, float pZ) {
+        long tail = mTail.get();
+        if(tail - mHead.get() > mMask) {
+            mDropped++;
+            return false;
+        }
+
+        int i = (int) tail & mMask;
+        mTimestamps[i] = pTimestamp;
+        mX[i] = pX;
+        mY[i] = pY;
+        mZ[i] = pZ;
+        mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Number of samples waiting. Called by the consumer.
+     *
+     * @return Number of samples that can be read.
+     */
+    public int size() {
+        return (int) (mTail.get() - mHead.get());
+    }
+
+    /**
+     * Getter of the timestamp of a waiting sample. Called by the consumer.
+     *
+     * @param pOffset Position of the sample from the oldest one, less than size().
+     * @return Time of the sample in nanoseconds.
+     */
+    public long getTimestamp(int pOffset) {
+        return mTimestamps[(int) (mHead.get() + pOffset) & mMask];
+    }
+
+    /**
+     * Getter of the X acceleration of a waiting sample. Called by the consumer.
+     *
+     * @param pOffset Position of the sample from the oldest one, less than size().
+     * @return Acceleration in the X axis.
+     */
+    public float getX(int pOffset) {
+        return mX[(int) (mHead.get() + pOffset) & mMask];
+    }
+
+    /**
+     * Getter of the Y acceleration of a waiting sample. Called by the consumer.
+     *
+     * @param pOffset Position of the sample from the oldest one, less than size().
+     * @return Acceleration in the Y axis.
+     */
+    public float getY(int pOffset) {
+        return mY[(int) (mHead.get() + pOffset) & mMask];
+    }
+
+    /**
+     * Getter of the Z acceleration of a waiting sample. Called by the consumer.
+     *
+     * @param pOffset Position of the sample from the oldest one, less than size().
+     * @return Acceleration in the Z axis.
+     */
+    public float getZ(int pOffset) {
+        return mZ[(int) (mHead.get() + pOffset) & mMask];
+    }
+
+    /**
+     * Remove the oldest samples. Called by the consumer.
+     *
+     * @param pCount Number of samples read, at most size().
+     */
+    public void remove(int pCount) {
+        mHead.lazySet(mHead.get() + pCount);
+    }
+
+    /**
+     * Remove all samples. Only when neither side is running.
+     */
+    public void clear() {
+        mHead.set(mTail.get());
+    }
+
+    /**
+     * Getter of the number of samples dropped because the queue was full
+     *
+     * @return Number of samples dropped.
+     */
+    public long getDropped() {
+        return mDropped;
+    }
+}
@@ -0,0 +1,73 @@
+package dimitri_dessus.labymotion.engines;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the view following the ball in a world larger than the screen.
+ */
+public class CameraTest {
+
+    private Camera mCamera;
+
+    @Before
+    public void setUp() {
+        mCamera = new Camera();
+        mCamera.setViewport(800, 400);
+        mCamera.setWorld(20000, 20000);
+    }
+
+    @Test
+    public void follow_keepsStillInMiddleOfScreen() throws Exception {
+        assertFalse(mCamera.follow(400, 200));
+        assertFalse(mCamera.follow(590, 290));
+        assertEquals(0, mCamera.getLeft());
+        assertEquals(0, mCamera.getTop());
+    }
+
+    @Test
+    public void follow_scrollsWhenBallReachesSides() throws Exception {
+        assertTrue(mCamera.follow(700, 200));
+        assertEquals(100, mCamera.getLeft());
+        assertEquals(0, mCamera.getTop());
+
+        // Far jump, as on reset, the ball is shown at once
+        assertTrue(mCamera.follow(10000.5f, 12000));
+        assertTrue(mCamera.isVisible(10000, 12000, 10001, 12001));
+        assertEquals(10000 - 600 + 1, mCamera.getLeft());
+
+        // Back left, the ball stays on the dead zone border
+        assertTrue(mCamera.follow(9000, 12000));
+        assertEquals(9000 - 200, mCamera.getLeft());
+    }
+
+    @Test
+    public void follow_staysInWorld() throws Exception {
+        assertFalse(mCamera.follow(10, 10));
+        assertEquals(0, mCamera.getLeft());
+
+        mCamera.follow(19990, 19990);
+        assertEquals(20000 - 800, mCamera.getLeft());
+        assertEquals(20000 - 400, mCamera.getTop());
+
+        // World smaller than the screen stays at the top left corner
+        mCamera.setWorld(600, 300);
+        mCamera.follow(590, 290);
+        assertEquals(0, mCamera.getLeft());
+        assertEquals(0, mCamera.getTop());
+    }
+
+    @Test
+    public void isVisible_cullsOutOfScreen() throws Exception {
+        mCamera.follow(5000, 5000);
+        int left = mCamera.getLeft();
+        int top = mCamera.getTop();
+
+        assertTrue(mCamera.isVisible(left - 10, top - 10, left + 1, top + 1));
+        assertFalse(mCamera.isVisible(left - 10, top, left, top + 10));
+        assertFalse(mCamera.isVisible(left + 800, top, left + 810, top + 10));
+        assertFalse(mCamera.isVisible(left, top + 400, left + 10, top + 410));
+    }
+}
@@ -0,0 +1,77 @@
+package dimitri_dessus.labymotion.levels;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the way to END computed for every cell.
+ */
+public class DistanceFieldTest {
+
+    @Test
+    public void compute_followsCorridorToEnd() throws Exception {
+        BlockStore blocks = LevelLoader.load(new ByteArrayInputStream("#####\n#S..#\n###.#\n#E..#\n#####\n".getBytes()));
+        DistanceField field = DistanceField.compute(blocks);
+
+        assertEquals(0, field.getCost(1, 3));
+        assertEquals(DistanceField.UNREACHABLE, field.getCost(0, 0));
+        assertEquals(DistanceField.UNREACHABLE, field.getCost(-1, 2));
+
+        // Next cells from START walk the whole corridor, costs always going down
+        int x = 1;
+        int y = 1;
+        int moves = 0;
+        while(field.getNext(x, y) != -1) {
+            int next = field.getNext(x, y);
+            assertTrue(field.getCost(next % 5, next / 5) < field.getCost(x, y));
+            x = next % 5;
+            y = next / 5;
+            moves++;
+        }
+        assertEquals(BlockStore.END, blocks.getCell(x, y));
+        assertEquals(MazeSolver.pathLength(blocks), moves);
+    }
+
+    @Test
+    public void compute_keepsAwayFromHoles() throws Exception {
+        // Wide corridor, the middle row has no hole around
+        BlockStore blocks = LevelLoader.load(new ByteArrayInputStream(
+                "#########\n#.......#\n#S.....E#\n#.......#\n#########\n".getBytes()));
+        DistanceField field = DistanceField.compute(blocks);
+
+        assertEquals(2 * 9 + 2, field.getNext(1, 2));
+        assertTrue(field.getCost(3, 2) < field.getCost(3, 1));
+
+        // From the edge the way goes to the middle first
+        assertEquals(2 * 9 + 4, field.getNext(4, 1));
+    }
+
+    @Test
+    public void compute_treatsWallsAsBlocking() throws Exception {
+        BlockStore blocks = LevelLoader.load(new ByteArrayInputStream("S.W.E\n".getBytes()));
+        DistanceField field = DistanceField.compute(blocks);
+
+        assertEquals(DistanceField.UNREACHABLE, field.getCost(0, 0));
+        assertEquals(-1, field.getNext(0, 0));
+        assertEquals(4, field.getNext(3, 0));
+    }
+
+    @Test
+    public void compute_reachesEveryCellOfGeneratedMaze() throws Exception {
+        BlockStore blocks = MazeGenerator.generate(41, 31, 2, 42L);
+        DistanceField field = DistanceField.compute(blocks);
+
+        for(int y = 0; y < 31; y++) {
+            for(int x = 0; x < 41; x++) {
+                boolean free = blocks.getCell(x, y) != BlockStore.HOLE;
+                assertEquals(free, field.getCost(x, y) != DistanceField.UNREACHABLE);
+                assertEquals(free && blocks.getCell(x, y) != BlockStore.END, field.getNext(x, y) != -1);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dimitri_dessus.labymotion.levels;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the playability check and difficulty score of labyrinths.
+ */
+public class LevelCheckTest {
+
+    @Test
+    public void check_acceptsGeneratedLabyrinths() throws Exception {
+        LevelCheck check = new LevelCheck();
+        for(long seed = 0; seed < 50; seed++) {
+            BlockStore maze = MazeGenerator.generate(21, 15, 1 + (int) (seed % 3), seed);
+
+            assertTrue(check.check(maze));
+            assertEquals(0, check.getProblems());
+            assertEquals(MazeSolver.pathLength(maze), check.getPathLength());
+        }
+    }
+
+    @Test
+    public void check_reportsMissingBlocs() throws Exception {
+        LevelCheck check = new LevelCheck();
+
+        assertFalse(check.check(load("#...E#\n")));
+        assertEquals(LevelCheck.NO_START, check.getProblems());
+
+        assertFalse(check.check(load("#.....\n")));
+        assertEquals(LevelCheck.NO_START | LevelCheck.NO_END, check.getProblems());
+        assertEquals("no start, no end", LevelCheck.describe(check.getProblems()));
+    }
+
+    @Test
+    public void check_reportsUnreachableEnd() throws Exception {
+        LevelCheck check = new LevelCheck();
+
+        // Closest END is reached, the one behind the wall is not
+        assertFalse(check.check(load("S.E.W.E\n")));
+        assertEquals(LevelCheck.UNREACHABLE_END, check.getProblems());
+        assertEquals(2, check.getPathLength());
+
+        // No END reached at all
+        assertFalse(check.check(load("S.#.E\n")));
+        assertEquals(LevelCheck.UNREACHABLE_END, check.getProblems());
+        assertEquals(-1, check.getPathLength());
+        assertEquals(0, check.getDifficulty(), 0.0f);
+    }
+
+    @Test
+    public void check_scoresNarrowCorridorsHarder() throws Exception {
+        LevelCheck check = new LevelCheck();
+
+        // Wide corridor, only START and END are next to a hole
+        assertTrue(check.check(load("#########\n#.......#\n#.......#\n#S.....E#\n#.......#\n#.......#\n#########\n")));
+        assertEquals(6, check.getPathLength());
+        assertEquals(2, check.getNearHoles());
+        float wide = check.getDifficulty();
+
+        // Same path length along holes
+        assertTrue(check.check(load("#########\n#S.....E#\n#########\n")));
+        assertEquals(6, check.getPathLength());
+        assertEquals(7, check.getNearHoles());
+        assertEquals(1, check.getMeanWidth(), 0.0f);
+        assertTrue(check.getDifficulty() > wide);
+    }
+
+    private static BlockStore load(String pLevel) throws Exception {
+        return LevelLoader.load(new ByteArrayInputStream(pLevel.getBytes()));
+    }
+}
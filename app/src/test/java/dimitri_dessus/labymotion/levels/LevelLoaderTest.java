@@ -0,0 +1,125 @@
+package dimitri_dessus.labymotion.levels;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of level files reading and writing.
+ */
+public class LevelLoaderTest {
+
+    @Test
+    public void load_readsAsciiGrid() throws Exception {
+        BlockStore blocks = LevelLoader.load(stream("###\r\n#S.\n#.E\n"));
+
+        assertEquals(3, blocks.getColumns());
+        assertEquals(3, blocks.getRows());
+        assertEquals(BlockStore.HOLE, blocks.getCell(0, 0));
+        assertEquals(BlockStore.START, blocks.getCell(1, 1));
+        assertEquals(BlockStore.EMPTY, blocks.getCell(2, 1));
+        assertEquals(BlockStore.END, blocks.getCell(2, 2));
+    }
+
+    @Test
+    public void load_readsRaggedAsciiGrid() throws Exception {
+        BlockStore blocks = LevelLoader.load(stream("#\n#S..E\n\n##\n\n"));
+
+        assertEquals(5, blocks.getColumns());
+        assertEquals(4, blocks.getRows());
+        assertEquals(BlockStore.END, blocks.getCell(4, 1));
+        assertEquals(BlockStore.EMPTY, blocks.getCell(0, 2));
+        assertEquals(BlockStore.HOLE, blocks.getCell(1, 3));
+    }
+
+    @Test
+    public void write_thenLoad_keepsAllBlocs() throws Exception {
+        BlockStore blocks = LevelLoader.load(stream("#####\n#S..#\n#..E#\n#####\n"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LevelLoader.write(blocks, output);
+        byte[] bytes = output.toByteArray();
+
+        // Header (9 bytes) and 20 cells on 2 bits
+        assertEquals(9 + 5, bytes.length);
+
+        BlockStore loaded = LevelLoader.load(new ByteArrayInputStream(bytes));
+        assertEquals(blocks.getColumns(), loaded.getColumns());
+        assertEquals(blocks.getRows(), loaded.getRows());
+        assertArrayEquals(blocks.getCells(), loaded.getCells());
+    }
+
+    @Test
+    public void write_thenLoad_keepsWalls() throws Exception {
+        BlockStore blocks = LevelLoader.load(stream("#####\n#SW.#\n#.WE#\n#####\n"));
+        assertEquals(BlockStore.WALL, blocks.getCell(2, 1));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LevelLoader.write(blocks, output);
+        byte[] bytes = output.toByteArray();
+
+        // Walls need 4 bits per cell
+        assertEquals(9 + 10, bytes.length);
+        assertEquals(2, bytes[4]);
+
+        BlockStore loaded = LevelLoader.load(new ByteArrayInputStream(bytes));
+        assertArrayEquals(blocks.getCells(), loaded.getCells());
+    }
+
+    @Test(expected = EOFException.class)
+    public void load_failsOnTruncatedBinary() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LevelLoader.write(LevelLoader.load(stream("####\n#SE#\n####\n")), output);
+        byte[] bytes = output.toByteArray();
+
+        LevelLoader.load(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void load_rejectsEmptyBinary() throws Exception {
+        LevelLoader.load(new ByteArrayInputStream(new byte[] { 'L', 'B', 'Y', 'M', 1, 0, 0, 0, 5, 0 }));
+    }
+
+    @Test(expected = IOException.class)
+    public void load_rejectsOversizedBinary() throws Exception {
+        // Header only, the grid must not be allocated
+        byte max = (byte) 0xFF;
+        LevelLoader.load(new ByteArrayInputStream(new byte[] { 'L', 'B', 'Y', 'M', 1, max, max, max, max }));
+    }
+
+    @Test
+    public void load_readsFirstShippedLevel() throws Exception {
+        InputStream input = new FileInputStream("src/main/assets/levels/001.txt");
+        BlockStore blocks;
+        try {
+            blocks = LevelLoader.load(input);
+        } finally {
+            input.close();
+        }
+
+        assertEquals(20, blocks.getColumns());
+        assertEquals(14, blocks.getRows());
+        assertEquals(2 * 20 + 2, blocks.indexOf(BlockStore.START));
+        assertEquals(11 * 20 + 8, blocks.indexOf(BlockStore.END));
+
+        int holes = 0;
+        for(byte cell : blocks.getCells()) {
+            if(cell == BlockStore.HOLE)
+                holes++;
+        }
+        assertEquals(106, holes);
+    }
+
+    private static InputStream stream(String pLevel) {
+        return new ByteArrayInputStream(pLevel.getBytes());
+    }
+}
@@ -0,0 +1,86 @@
+package dimitri_dessus.labymotion.levels;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the levels prepared in the background.
+ */
+public class LevelPreloaderTest {
+
+    private LevelPreloader mPreloader = null;
+
+    @After
+    public void tearDown() {
+        if(mPreloader != null)
+            mPreloader.shutdown();
+    }
+
+    @Test
+    public void take_returnsPreparedLevel() throws Exception {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        mPreloader = new LevelPreloader(new LevelPreloader.Source() {
+            @Override
+            public BlockStore load(int pIndex) {
+                loaded.countDown();
+                return MazeGenerator.generate(21, 15, 1, pIndex);
+            }
+        });
+
+        mPreloader.prepare(3);
+        loaded.await();
+        PreparedLevel level = mPreloader.take(3);
+
+        assertEquals(3, level.getIndex());
+        assertEquals(21, level.getBlocks().getColumns());
+        assertEquals(21, level.getRects().getColumns());
+        int start = level.getBlocks().indexOf(BlockStore.START);
+        assertNotEquals(-1, level.getDistanceField().getNext(start % 21, start / 21));
+        assertFalse(mPreloader.isReady(3));
+    }
+
+    @Test
+    public void take_preparesLevelNotAskedFor() throws Exception {
+        mPreloader = new LevelPreloader(new LevelPreloader.Source() {
+            @Override
+            public BlockStore load(int pIndex) {
+                return MazeGenerator.generate(11, 11, 1, pIndex);
+            }
+        });
+
+        mPreloader.prepare(1);
+        assertEquals(2, mPreloader.take(2).getIndex());
+        assertEquals(1, mPreloader.take(1).getIndex());
+    }
+
+    @Test(expected = IOException.class)
+    public void take_throwsLoadError() throws Exception {
+        mPreloader = new LevelPreloader(new LevelPreloader.Source() {
+            @Override
+            public BlockStore load(int pIndex) throws IOException {
+                throw new IOException("Missing level " + pIndex);
+            }
+        });
+
+        mPreloader.take(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void take_rejectsUnplayableLevel() throws Exception {
+        mPreloader = new LevelPreloader(new LevelPreloader.Source() {
+            @Override
+            public BlockStore load(int pIndex) {
+                return new BlockStore(5, 5);
+            }
+        });
+
+        mPreloader.take(0);
+    }
+}
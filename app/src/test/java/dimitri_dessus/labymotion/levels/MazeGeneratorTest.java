@@ -0,0 +1,69 @@
+package dimitri_dessus.labymotion.levels;
+
+import org.junit.Test;
+
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the labyrinth generator.
+ */
+public class MazeGeneratorTest {
+
+    @Test
+    public void generate_isDeterministic() throws Exception {
+        BlockStore first = MazeGenerator.generate(41, 31, 2, 42L);
+        BlockStore second = MazeGenerator.generate(41, 31, 2, 42L);
+        BlockStore other = MazeGenerator.generate(41, 31, 2, 43L);
+
+        assertArrayEquals(first.getCells(), second.getCells());
+        assertFalse(java.util.Arrays.equals(first.getCells(), other.getCells()));
+    }
+
+    @Test
+    public void generate_alwaysHasPathFromStartToEnd() throws Exception {
+        for(int corridor = 1; corridor <= 3; corridor++) {
+            for(long seed = 0; seed < 200; seed++) {
+                BlockStore blocks = MazeGenerator.generate(20, 14, corridor, seed);
+
+                assertEquals(20, blocks.getColumns());
+                assertEquals(14, blocks.getRows());
+                assertEquals(BlockStore.START, blocks.getCell(1, 1));
+                assertTrue("Seed " + seed, MazeSolver.pathLength(blocks) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void generate_keepsOuterWall() throws Exception {
+        BlockStore blocks = MazeGenerator.generate(20, 14, 2, 7L);
+
+        for(int x = 0; x < 20; x++) {
+            assertEquals(BlockStore.HOLE, blocks.getCell(x, 0));
+            assertEquals(BlockStore.HOLE, blocks.getCell(x, 13));
+        }
+        for(int y = 0; y < 14; y++) {
+            assertEquals(BlockStore.HOLE, blocks.getCell(0, y));
+            assertEquals(BlockStore.HOLE, blocks.getCell(19, y));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void generate_rejectsTooSmallGrid() throws Exception {
+        MazeGenerator.generate(4, 4, 2, 0L);
+    }
+
+    @Test
+    public void pathLength_isMinusOneWhenEndIsWalledIn() throws Exception {
+        BlockStore blocks = new BlockStore(5, 1);
+        blocks.setCell(0, 0, BlockStore.START);
+        blocks.setCell(2, 0, BlockStore.HOLE);
+        blocks.setCell(4, 0, BlockStore.END);
+
+        assertEquals(-1, MazeSolver.pathLength(blocks));
+
+        blocks.setCell(2, 0, BlockStore.EMPTY);
+        assertEquals(4, MazeSolver.pathLength(blocks));
+    }
+}
@@ -0,0 +1,71 @@
+package dimitri_dessus.labymotion.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void indexOf_keepsValuesInsideTheirBucket() throws Exception {
+        Random random = new Random(7);
+        for(int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LatencyHistogram.indexOf(value);
+
+            assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            if(index > 0)
+                assertTrue(value > LatencyHistogram.highestValueOf(index - 1));
+        }
+        assertEquals(15, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(15)));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void getPercentile_isWithinBucketPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long value = 1; value <= 100000; value++)
+            histogram.record(value * 1000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100000, snapshot.getCount());
+        assertEquals(50000500, snapshot.getMean());
+        assertEquals(100000000, snapshot.getMax());
+        assertEquals(50000000, snapshot.getPercentile(50), 50000000 * 0.0625);
+        assertEquals(99000000, snapshot.getPercentile(99), 99000000 * 0.0625);
+        assertEquals(100000000, snapshot.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentile(99));
+    }
+
+    @Test
+    public void record_countsEveryValueAcrossThreads() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            final long value = (t + 1) * 1000;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for(int i = 0; i < 100000; i++)
+                        histogram.record(value);
+                }
+            };
+            threads[t].start();
+        }
+        for(Thread thread : threads)
+            thread.join();
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(400000, snapshot.getCount());
+        assertEquals(4000, snapshot.getMax());
+        assertEquals(2500, snapshot.getMean());
+    }
+}
@@ -0,0 +1,64 @@
+package dimitri_dessus.labymotion.models;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the ball position handoff between threads.
+ */
+public class BallSnapshotTest {
+
+    @Test
+    public void acquire_returnsLastPublishedPositionOnce() throws Exception {
+        BallSnapshot snapshot = new BallSnapshot();
+        assertFalse(snapshot.acquire());
+
+        snapshot.publish(1, 2);
+        snapshot.publish(3, 4);
+        assertTrue(snapshot.acquire());
+        assertEquals(3, snapshot.getX(), 0);
+        assertEquals(4, snapshot.getY(), 0);
+
+        // Nothing new, front buffer is kept
+        assertFalse(snapshot.acquire());
+        assertEquals(3, snapshot.getX(), 0);
+        assertEquals(4, snapshot.getY(), 0);
+    }
+
+    @Test
+    public void acquire_neverSeesHalfWrittenPosition() throws Exception {
+        final BallSnapshot snapshot = new BallSnapshot();
+        final int count = 2000000;
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                float last = 0;
+                while(last < count - 1) {
+                    if(!snapshot.acquire())
+                        continue;
+
+                    float x = snapshot.getX();
+                    float y = snapshot.getY();
+                    if(y != -x || x < last) {
+                        error.set("Read " + x + ", " + y + " after " + last);
+                        return;
+                    }
+                    last = x;
+                }
+            }
+        };
+        reader.start();
+
+        for(int i = 0; i < count; i++)
+            snapshot.publish(i, -i);
+
+        reader.join(10000);
+        assertFalse(reader.isAlive());
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,206 @@
+package dimitri_dessus.labymotion.models;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the extra balls moves and collisions.
+ */
+public class BallSystemTest {
+
+    private static final float CELL = 20.0f;
+
+    private BlockStore mBlocks;
+
+    @Before
+    public void setUp() {
+        Ball.RADIUS = 10.0f;
+
+        mBlocks = new BlockStore(20, 14);
+        mBlocks.setCell(10, 7, BlockStore.HOLE);
+        mBlocks.setCell(15, 3, BlockStore.END);
+    }
+
+    @Test
+    public void step_movesLikeBall() throws Exception {
+        BallSystem balls = new BallSystem(1);
+        balls.setBounds(400, 280);
+        balls.add(50, 50, Ball.RADIUS);
+
+        Ball ball = new Ball();
+        ball.setWidth(400);
+        ball.setHeight(280);
+        ball.setInitialPosition(40, 40);
+
+        for(int i = 0; i < 300; i++) {
+            float x = (i & 32) == 0 ? 9.0f : -7.0f;
+            float y = (i & 64) == 0 ? -8.0f : 6.0f;
+            ball.putXAndY(x, y);
+            balls.step(x, y, null, CELL);
+
+            assertEquals(ball.getX(), balls.getX(0), 0.0f);
+            assertEquals(ball.getY(), balls.getY(0), 0.0f);
+        }
+    }
+
+    @Test
+    public void step_stopsBallOnHole() throws Exception {
+        BallSystem balls = new BallSystem(1);
+        balls.setBounds(400, 280);
+        balls.add(5 * CELL, 7.5f * CELL, 5);
+
+        // Roll right until the ball falls
+        for(int i = 0; i < 100 && balls.getState(0) == BlockStore.EMPTY; i++)
+            balls.step(0, 9.0f, mBlocks, CELL);
+
+        assertEquals(BlockStore.HOLE, balls.getState(0));
+        assertTrue(balls.getX(0) <= 10 * CELL);
+
+        // Ball stays where it fell
+        float x = balls.getX(0);
+        balls.step(0, 9.0f, mBlocks, CELL);
+        assertEquals(x, balls.getX(0), 0.0f);
+
+        // Fallen balls are not drawn
+        balls.publish();
+        assertTrue(balls.getSnapshot().acquire());
+        assertEquals(0, balls.getSnapshot().getLength());
+    }
+
+    @Test
+    public void step_headOnCollisionKeepsMomentum() throws Exception {
+        BallSystem balls = new BallSystem(2);
+        balls.setBounds(1000, 1000);
+        balls.add(400, 500, 10);
+        balls.add(430, 500, 20);
+        balls.setSpeed(0, 5, 0);
+        balls.setSpeed(1, -5, 0);
+        float momentum = 5 * 100 - 5 * 400;
+
+        assertEquals(1, balls.step(0, 0, null, CELL));
+
+        // Same momentum, balls moving apart and no longer overlapping
+        assertEquals(momentum, balls.getSpeedX(0) * 100 + balls.getSpeedX(1) * 400, 1e-3f);
+        assertTrue(balls.getSpeedX(0) < balls.getSpeedX(1));
+        assertEquals(30, balls.getX(1) - balls.getX(0), 1e-3f);
+
+        // Bounce loses energy
+        float energy = balls.getSpeedX(0) * balls.getSpeedX(0) * 100 + balls.getSpeedX(1) * balls.getSpeedX(1) * 400;
+        assertTrue(energy < 25 * 100 + 25 * 400);
+    }
+
+    @Test
+    public void step_countsSameContactsAsAllPairs() throws Exception {
+        // Overlapping pairs far from each other, at random places in the grid cells
+        Random random = new Random(17);
+        BallSystem balls = new BallSystem(200);
+        balls.setBounds(400, 280);
+        for(int x = 0; x < 20; x++) {
+            for(int y = 0; y < 5; y++) {
+                float left = x * 20 + 4 + random.nextFloat() * 4;
+                float top = y * 50 + 10 + random.nextFloat() * 20;
+                balls.add(left, top, 3);
+                balls.add(left + 5, top + random.nextFloat(), 3);
+            }
+        }
+
+        int expected = 0;
+        for(int a = 0; a < balls.getCount(); a++) {
+            for(int b = a + 1; b < balls.getCount(); b++) {
+                float dX = balls.getX(a) - balls.getX(b);
+                float dY = balls.getY(a) - balls.getY(b);
+                float reach = balls.getRadius(a) + balls.getRadius(b);
+                if(dX * dX + dY * dY < reach * reach)
+                    expected++;
+            }
+        }
+
+        assertEquals(100, expected);
+        assertEquals(expected, balls.step(0, 0, null, CELL));
+    }
+
+    @Test
+    public void step_costsNothingForEmptyCells() throws Exception {
+        // Billions of grid cells, only the ones holding balls are visited
+        BallSystem balls = new BallSystem(4);
+        balls.setBounds(2000000, 2000000);
+        balls.add(100, 100, 3);
+        balls.add(105, 100, 3);
+        balls.add(1999900, 1999900, 3);
+        balls.add(1999900, 1999905, 3);
+
+        assertEquals(2, balls.step(0, 0, null, CELL));
+    }
+
+    @Test
+    public void step_parallelMatchesSequential() throws Exception {
+        // Balls next to each other in the arrays are next to each other in the rooms
+        BallSystem sequential = createRows(BallSystem.PARALLEL_THRESHOLD * 2);
+        BallSystem parallel = createRows(BallSystem.PARALLEL_THRESHOLD * 2);
+
+        // Rooms with walls on every side, balls pile up in their corners
+        BlockStore blocks = new BlockStore(20, 14);
+        for(int y = 0; y < 14; y++) {
+            for(int x = 0; x < 20; x++) {
+                if(x % 5 == 0 && y % 7 != 3 || y % 7 == 0 && x % 5 != 2)
+                    blocks.setCell(x, y, BlockStore.WALL);
+            }
+        }
+        blocks.setCell(12, 10, BlockStore.HOLE);
+        blocks.setCell(7, 3, BlockStore.END);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            parallel.setExecutor(executor, 64);
+            for(int i = 0; i < 200; i++) {
+                float x = (i & 16) == 0 ? 9.0f : -9.0f;
+                float y = (i & 32) == 0 ? 7.0f : -7.0f;
+                assertEquals(sequential.step(x, y, blocks, CELL), parallel.step(x, y, blocks, CELL));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for(int i = 0; i < sequential.getCount(); i++) {
+            assertEquals(sequential.getX(i), parallel.getX(i), 0.0f);
+            assertEquals(sequential.getY(i), parallel.getY(i), 0.0f);
+            assertEquals(sequential.getState(i), parallel.getState(i));
+        }
+    }
+
+    @Test
+    public void publish_handsRollingBallsToReader() throws Exception {
+        BallSystem balls = new BallSystem(2);
+        balls.add(10, 20, 3);
+        balls.add(30, 40, 4);
+        balls.publish();
+
+        BallSnapshot snapshot = balls.getSnapshot();
+        assertTrue(snapshot.acquire());
+        assertEquals(6, snapshot.getLength());
+        assertEquals(30, snapshot.getValue(3), 0.0f);
+        assertEquals(4, snapshot.getValue(5), 0.0f);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_rejectsBallOverCapacity() throws Exception {
+        BallSystem balls = new BallSystem(1);
+        balls.add(10, 10, 3);
+        balls.add(20, 20, 3);
+    }
+
+    private BallSystem createRows(int pCount) {
+        Random random = new Random(42);
+        BallSystem balls = new BallSystem(pCount);
+        balls.setBounds(400, 280);
+        for(int i = 0; i < pCount; i++)
+            balls.add(5 + (i % 64) * 6 + random.nextFloat(), 5 + (i / 64) * 17 + random.nextFloat(), 4 + random.nextFloat() * 4);
+        return balls;
+    }
+}
@@ -0,0 +1,96 @@
+package dimitri_dessus.labymotion.models;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import dimitri_dessus.labymotion.levels.LevelLoader;
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the blocs merged in rectangles for drawing.
+ */
+public class BlockRectsTest {
+
+    @Test
+    public void merge_coversEveryBlocOnce() throws Exception {
+        Random random = new Random(7);
+        for(int i = 0; i < 50; i++) {
+            BlockStore blocks = new BlockStore(1 + random.nextInt(40), 1 + random.nextInt(30));
+            byte[] cells = blocks.getCells();
+            for(int c = 0; c < cells.length; c++)
+                cells[c] = (byte) (random.nextInt(3) == 0 ? random.nextInt(5) : BlockStore.HOLE);
+
+            assertSameCells(blocks, BlockRects.merge(blocks, 1 + random.nextInt(8)));
+        }
+    }
+
+    @Test
+    public void merge_listsRectanglesInTilesTheyOverlap() throws Exception {
+        BlockStore blocks = MazeGenerator.generate(41, 31, 2, 3L);
+        BlockRects rects = BlockRects.merge(blocks, 4);
+
+        assertEquals(11, rects.getTileColumns());
+        assertEquals(8, rects.getTileRows());
+        for(int tile = 0; tile < 11 * 8; tile++) {
+            int left = (tile % 11) * 4;
+            int top = (tile / 11) * 4;
+
+            // Listed rectangles are the overlapping ones, each listed once
+            boolean[] listed = new boolean[rects.getCount()];
+            for(int entry = rects.getTileStart(tile); entry < rects.getTileStart(tile + 1); entry++) {
+                assertFalse(listed[rects.getTileRect(entry)]);
+                listed[rects.getTileRect(entry)] = true;
+            }
+            for(int i = 0; i < rects.getCount(); i++) {
+                boolean overlaps = rects.getLeft(i) < left + 4 && rects.getRight(i) > left
+                        && rects.getTop(i) < top + 4 && rects.getBottom(i) > top;
+                assertEquals(overlaps, listed[i]);
+            }
+        }
+        assertSameCells(blocks, rects);
+    }
+
+    @Test
+    public void merge_drawsLevelWithFewRectangles() throws Exception {
+        InputStream input = new FileInputStream("src/main/assets/levels/001.txt");
+        BlockStore blocks;
+        try {
+            blocks = LevelLoader.load(input);
+        } finally {
+            input.close();
+        }
+
+        int blocs = 0;
+        for(byte cell : blocks.getCells()) {
+            if(cell != BlockStore.EMPTY)
+                blocs++;
+        }
+
+        BlockRects rects = BlockRects.merge(blocks, 4);
+        assertSameCells(blocks, rects);
+        assertTrue(rects.getCount() * 5 <= blocs);
+    }
+
+    /**
+     * Paint the rectangles in an empty grid and check it matches the blocs.
+     */
+    private static void assertSameCells(BlockStore pBlocks, BlockRects pRects) {
+        byte[] painted = new byte[pBlocks.getCells().length];
+        int columns = pBlocks.getColumns();
+        for(int i = 0; i < pRects.getCount(); i++) {
+            assertNotEquals(BlockStore.EMPTY, pRects.getType(i));
+            for(int y = pRects.getTop(i); y < pRects.getBottom(i); y++) {
+                for(int x = pRects.getLeft(i); x < pRects.getRight(i); x++) {
+                    assertEquals("Cell painted twice", BlockStore.EMPTY, painted[y * columns + x]);
+                    painted[y * columns + x] = pRects.getType(i);
+                }
+            }
+        }
+        assertArrayEquals(pBlocks.getCells(), painted);
+    }
+}
@@ -0,0 +1,118 @@
+package dimitri_dessus.labymotion.models;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the collision lookup between the ball and the blocs.
+ */
+public class BlockStoreTest {
+
+    private BlockStore mBlocks;
+    private Ball mBall;
+    private Collision mCollision;
+
+    @Before
+    public void setUp() {
+        Ball.RADIUS = 10.0f;
+
+        mBlocks = new BlockStore(20, 14);
+        for(int x = 0; x < 20; x++) {
+            mBlocks.setCell(x, 0, BlockStore.HOLE);
+            mBlocks.setCell(x, 13, BlockStore.HOLE);
+        }
+        mBlocks.setCell(2, 2, BlockStore.START);
+        mBlocks.setCell(8, 11, BlockStore.END);
+
+        mCollision = new Collision();
+        mBall = new Ball();
+        mBall.setWidth(400);
+        mBall.setHeight(280);
+        placeBall(mBall, 2 * 20.0f, 5 * 20.0f);
+    }
+
+    @Test
+    public void find_returnsFalseWhenBallIsFree() throws Exception {
+        assertFalse(find());
+        assertEquals(BlockStore.EMPTY, mCollision.getType());
+    }
+
+    @Test
+    public void find_returnsBlocUnderBall() throws Exception {
+        placeBall(mBall, 8 * 20.0f, 11 * 20.0f);
+
+        assertTrue(find());
+        assertEquals(BlockStore.END, mCollision.getType());
+        assertEquals(8, mCollision.getX());
+        assertEquals(11, mCollision.getY());
+    }
+
+    @Test
+    public void find_ignoresBlocOnlyTouchingEdge() throws Exception {
+        // Ball hit box ends exactly where the row of holes starts
+        placeBall(mBall, 5 * 20.0f, 12 * 20.0f);
+
+        assertFalse(find());
+    }
+
+    @Test
+    public void sweep_catchesFastBallCrossingOneCell() throws Exception {
+        // Small cells, ball moving 30 px per step through a one cell wide column of holes
+        Ball.RADIUS = 2.0f;
+        BlockStore blocks = new BlockStore(40, 10);
+        for(int y = 0; y < 10; y++)
+            blocks.setCell(30, y, BlockStore.HOLE);
+
+        Ball ball = new Ball();
+        ball.setWidth(400);
+        ball.setHeight(400);
+        placeBall(ball, 8.0f, 8.0f);
+
+        boolean swept = false;
+        boolean found = false;
+        while(!swept && ball.getX() < 200) {
+            ball.putXAndY(0, 240.0f);
+            found |= blocks.find(ball.getX(), ball.getY(), Ball.RADIUS, mCollision);
+            swept = blocks.sweep(ball.getLastX(), ball.getLastY(), ball.getX(), ball.getY(), Ball.RADIUS, mCollision);
+        }
+
+        // Ball goes from x = 100 to x = 130 and enters the grown bloc at x = 118
+        assertFalse(found);
+        assertTrue(swept);
+        assertEquals(BlockStore.HOLE, mCollision.getType());
+        assertEquals(0.6f, mCollision.getTime(), 0.001f);
+
+        ball.rewind(mCollision.getTime());
+        assertEquals(118.0f, ball.getX(), 0.001f);
+    }
+
+    @Test
+    public void sweep_ignoresStartBloc() throws Exception {
+        placeBall(mBall, 2 * 20.0f, 2 * 20.0f);
+        mBall.putXAndY(0, 0);
+
+        assertTrue(find());
+        assertEquals(BlockStore.START, mCollision.getType());
+        assertFalse(sweep());
+    }
+
+    @Test
+    public void indexOf_findsStart() throws Exception {
+        assertEquals(2 * 20 + 2, mBlocks.indexOf(BlockStore.START));
+        assertEquals(-1, new BlockStore(3, 3).indexOf(BlockStore.START));
+    }
+
+    private boolean find() {
+        return mBlocks.find(mBall.getX(), mBall.getY(), Ball.RADIUS, mCollision);
+    }
+
+    private boolean sweep() {
+        return mBlocks.sweep(mBall.getLastX(), mBall.getLastY(), mBall.getX(), mBall.getY(), Ball.RADIUS, mCollision);
+    }
+
+    private static void placeBall(Ball pBall, float pLeft, float pTop) {
+        pBall.setInitialPosition(pLeft, pTop);
+    }
+}
@@ -0,0 +1,106 @@
+package dimitri_dessus.labymotion.models;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the ball pushed back by walls.
+ */
+public class WallContactsTest {
+
+    private static final float SIZE = 20.0f;
+    private static final float RADIUS = 10.0f;
+
+    private BlockStore mBlocks;
+    private WallContacts mWalls;
+
+    @Before
+    public void setUp() {
+        // Row of walls at y = 10, column of walls at x = 10
+        mBlocks = new BlockStore(20, 14);
+        for(int x = 0; x < 11; x++)
+            mBlocks.setCell(x, 10, BlockStore.WALL);
+        for(int y = 0; y < 11; y++)
+            mBlocks.setCell(10, y, BlockStore.WALL);
+
+        mWalls = new WallContacts();
+    }
+
+    @Test
+    public void resolve_ignoresFreeMove() throws Exception {
+        assertFalse(mWalls.resolve(mBlocks, SIZE, 50, 50, 60, 55, RADIUS));
+        assertEquals(60, mWalls.getX(), 0.0f);
+        assertEquals(55, mWalls.getY(), 0.0f);
+    }
+
+    @Test
+    public void resolve_stopsBallOnWall() throws Exception {
+        // Falling on the row of walls, top at y = 200
+        assertTrue(mWalls.resolve(mBlocks, SIZE, 50, 180, 50, 200, RADIUS));
+
+        assertEquals(50, mWalls.getX(), 1e-3f);
+        assertEquals(200 - RADIUS, mWalls.getY(), 1e-3f);
+        assertEquals(0, mWalls.getNormalX(0), 1e-6f);
+        assertEquals(-1, mWalls.getNormalY(0), 1e-6f);
+
+        // Speed bounces like on the sides
+        mWalls.bounce(3, 7);
+        assertEquals(3, mWalls.getSpeedX(), 1e-6f);
+        assertEquals(-7 / Ball.REBOUND, mWalls.getSpeedY(), 1e-5f);
+    }
+
+    @Test
+    public void resolve_slidesAlongRowOfWalls() throws Exception {
+        // Pushed into the row of walls while rolling over several of them
+        float x = 30;
+        float y = 200 - RADIUS;
+        for(int i = 0; i < 10; i++) {
+            mWalls.resolve(mBlocks, SIZE, x, y, x + 11, y + 5, RADIUS);
+            assertEquals(x + 11, mWalls.getX(), 1e-3f);
+            assertEquals(200 - RADIUS, mWalls.getY(), 1e-3f);
+            x = mWalls.getX();
+            y = mWalls.getY();
+        }
+    }
+
+    @Test
+    public void resolve_keepsBallInCorner() throws Exception {
+        // Inner corner between the row and the column, at (200, 200)
+        float x = 180;
+        float y = 180;
+        for(int i = 0; i < 10; i++) {
+            mWalls.resolve(mBlocks, SIZE, x, y, x + 8, y + 8, RADIUS);
+            x = mWalls.getX();
+            y = mWalls.getY();
+        }
+
+        assertEquals(200 - RADIUS, x, 1e-3f);
+        assertEquals(200 - RADIUS, y, 1e-3f);
+        assertEquals(2, mWalls.getContactCount());
+    }
+
+    @Test
+    public void resolve_stopsFastBallBeforeThinWall() throws Exception {
+        // Small ball moving three times its radius per step toward the column of walls
+        float x = 180;
+        for(int i = 0; i < 10; i++) {
+            mWalls.resolve(mBlocks, SIZE, x, 100, x + 9, 100, 3);
+            x = mWalls.getX();
+        }
+
+        assertEquals(200 - 3, x, 1e-3f);
+    }
+
+    @Test
+    public void resolve_roundsWallCorners() throws Exception {
+        // Ball passing next to the outer corner of the walls, at (220, 220)
+        assertTrue(mWalls.resolve(mBlocks, SIZE, 230, 232, 225, 227, RADIUS));
+
+        float dX = mWalls.getX() - 220;
+        float dY = mWalls.getY() - 220;
+        assertEquals(RADIUS, Math.sqrt(dX * dX + dY * dY), 1e-3f);
+        assertTrue(mWalls.getNormalX(0) > 0 && mWalls.getNormalY(0) > 0);
+    }
+}
@@ -0,0 +1,73 @@
+package dimitri_dessus.labymotion.sensors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the light and magnetic level filter.
+ */
+public class BucketFilterTest {
+
+    private static final float[] LEVELS = {100.0f, 200.0f, 300.0f};
+
+    @Test
+    public void addSample_setsFirstLevelDirectly() throws Exception {
+        BucketFilter filter = new BucketFilter(LEVELS, 10.0f, 0.5f, 0);
+        assertEquals(-1, filter.getBucket());
+
+        assertTrue(filter.addSample(0, 250.0f));
+        assertEquals(2, filter.getBucket());
+
+        // Bound belongs to the lower level
+        filter.reset();
+        assertTrue(filter.addSample(0, 100.0f));
+        assertEquals(0, filter.getBucket());
+    }
+
+    @Test
+    public void addSample_keepsLevelInsideHysteresis() throws Exception {
+        BucketFilter filter = new BucketFilter(LEVELS, 10.0f, 1.0f, 0);
+        filter.addSample(0, 95.0f);
+
+        // Hovering around the bound doesn't change level
+        assertFalse(filter.addSample(1, 105.0f));
+        assertFalse(filter.addSample(2, 98.0f));
+        assertFalse(filter.addSample(3, 109.0f));
+        assertEquals(0, filter.getBucket());
+
+        assertTrue(filter.addSample(4, 111.0f));
+        assertEquals(1, filter.getBucket());
+
+        assertFalse(filter.addSample(5, 91.0f));
+        assertTrue(filter.addSample(6, 90.0f));
+        assertEquals(0, filter.getBucket());
+
+        // Large jumps cross several levels at once
+        assertTrue(filter.addSample(7, 1000.0f));
+        assertEquals(3, filter.getBucket());
+    }
+
+    @Test
+    public void addSample_smoothsSpikes() throws Exception {
+        BucketFilter filter = new BucketFilter(LEVELS, 0.0f, 0.25f, 0);
+        filter.addSample(0, 50.0f);
+
+        // A single spike only moves the filtered value by a quarter
+        assertFalse(filter.addSample(1, 250.0f));
+        assertEquals(100.0f, filter.getValue(), 0.001f);
+        assertEquals(0, filter.getBucket());
+    }
+
+    @Test
+    public void addSample_ignoresSamplesUnderMinInterval() throws Exception {
+        BucketFilter filter = new BucketFilter(LEVELS, 0.0f, 1.0f, 100);
+        filter.addSample(1000, 50.0f);
+
+        assertFalse(filter.addSample(1050, 250.0f));
+        assertEquals(50.0f, filter.getValue(), 0);
+
+        assertTrue(filter.addSample(1100, 250.0f));
+        assertEquals(2, filter.getBucket());
+    }
+}
@@ -0,0 +1,127 @@
+package dimitri_dessus.labymotion.sensors;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the walking detection, on synthetic accelerometer traces at 50 Hz.
+ */
+public class MotionDetectorTest {
+
+    private static final float G = 9.80665f;
+
+    @Test
+    public void addSample_ignoresTiltingDevice() throws Exception {
+        MotionDetector detector = new MotionDetector();
+        Random random = new Random(1);
+
+        // Device slowly tilted back and forth, gravity only rotates, plus sensor noise
+        for(int i = 0; i < 2000; i++) {
+            double angle = Math.sin(i / 50.0) * 0.8;
+            float x = (float) (G * Math.sin(angle)) + noise(random);
+            float y = noise(random);
+            float z = (float) (G * Math.cos(angle)) + noise(random);
+            assertFalse("Sample " + i, detector.addSample(x, y, z));
+        }
+    }
+
+    @Test
+    public void addSample_detectsWalkingWithinFewSamples() throws Exception {
+        MotionDetector detector = new MotionDetector();
+        Random random = new Random(2);
+
+        // Resting
+        for(int i = 0; i < 200; i++)
+            assertFalse(detector.addSample(noise(random), noise(random), G + noise(random)));
+
+        // Steps at 2 Hz bounce the vertical acceleration
+        int detectedAt = -1;
+        for(int i = 0; i < 100 && detectedAt == -1; i++) {
+            float bounce = (float) (3.0 * Math.sin(2 * Math.PI * 2.0 * i / 50.0));
+            if(detector.addSample(noise(random), noise(random), G + bounce + noise(random)))
+                detectedAt = i;
+        }
+
+        assertTrue(detectedAt >= 0);
+        assertTrue("Detected after " + detectedAt + " samples", detectedAt <= 10);
+    }
+
+    @Test
+    public void addSample_keepsExactStatisticsOfWindow() throws Exception {
+        MotionDetector detector = new MotionDetector(8, 0.5f);
+        Random random = new Random(3);
+        double[] window = new double[8];
+
+        for(int i = 0; i < 1000; i++) {
+            float x = random.nextFloat() * 20 - 10;
+            float y = random.nextFloat() * 20 - 10;
+            float z = random.nextFloat() * 20 - 10;
+            detector.addSample(x, y, z);
+            window[i % 8] = (double) x * x + (double) y * y + (double) z * z;
+        }
+
+        double mean = 0;
+        for(double v : window)
+            mean += v / 8;
+        double variance = 0;
+        for(double v : window)
+            variance += (v - mean) * (v - mean) / 7;
+
+        assertEquals(mean, detector.getMean(), 1e-6);
+        assertEquals(variance, detector.getVariance(), variance * 1e-9);
+    }
+
+    @Test
+    public void reset_waitsForFullWindowAgain() throws Exception {
+        MotionDetector detector = new MotionDetector(4, 0.1f);
+        detector.addSample(0, 0, 5);
+        detector.addSample(0, 0, 15);
+        detector.addSample(0, 0, 5);
+        assertTrue(detector.addSample(0, 0, 15));
+
+        detector.reset();
+        assertFalse(detector.addSample(0, 0, 5));
+        assertFalse(detector.addSample(0, 0, 15));
+        assertEquals((25 + 225) / 2.0, detector.getMean(), 1e-9);
+    }
+
+    @Test
+    public void readState_goesOnWithSameWindow() throws Exception {
+        MotionDetector detector = new MotionDetector(8, 0.5f);
+        Random random = new Random(5);
+        for(int i = 0; i < 13; i++)
+            detector.addSample(random.nextFloat() * 20, random.nextFloat() * 20, random.nextFloat() * 20);
+
+        ByteBuffer buffer = ByteBuffer.allocate(detector.getStateSize());
+        detector.writeState(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        MotionDetector restored = new MotionDetector(8, 0.5f);
+        restored.readState(buffer);
+
+        for(int i = 0; i < 100; i++) {
+            float x = random.nextFloat() * 20;
+            float y = random.nextFloat() * 20;
+            float z = random.nextFloat() * 20;
+            assertEquals(detector.addSample(x, y, z), restored.addSample(x, y, z));
+            assertEquals(detector.getMean(), restored.getMean(), 0);
+            assertEquals(detector.getVariance(), restored.getVariance(), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readState_rejectsOtherWindow() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(new MotionDetector(8, 0.5f).getStateSize());
+        new MotionDetector(8, 0.5f).writeState(buffer);
+        buffer.flip();
+        new MotionDetector().readState(buffer);
+    }
+
+    private static float noise(Random pRandom) {
+        return (float) (pRandom.nextGaussian() * 0.05);
+    }
+}
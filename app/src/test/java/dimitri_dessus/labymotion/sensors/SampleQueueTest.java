@@ -0,0 +1,88 @@
+package dimitri_dessus.labymotion.sensors;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the sample queue between the sensor and physics threads.
+ */
+public class SampleQueueTest {
+
+    @Test
+    public void offer_keepsSamplesInOrder() throws Exception {
+        SampleQueue queue = new SampleQueue(4);
+        queue.offer(10, 1, 2, 3);
+        queue.offer(20, 4, 5, 6);
+
+        assertEquals(2, queue.size());
+        assertEquals(10, queue.getTimestamp(0));
+        assertEquals(20, queue.getTimestamp(1));
+        assertEquals(6, queue.getZ(1), 0);
+
+        queue.remove(1);
+        assertEquals(1, queue.size());
+        assertEquals(20, queue.getTimestamp(0));
+        assertEquals(4, queue.getX(0), 0);
+        assertEquals(5, queue.getY(0), 0);
+    }
+
+    @Test
+    public void offer_dropsSampleWhenFull() throws Exception {
+        // Capacity is rounded up to 4
+        SampleQueue queue = new SampleQueue(3);
+        for(int i = 0; i < 4; i++)
+            assertTrue(queue.offer(i, 0, 0, 0));
+
+        assertFalse(queue.offer(4, 0, 0, 0));
+        assertEquals(1, queue.getDropped());
+        assertEquals(0, queue.getTimestamp(0));
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertTrue(queue.offer(5, 0, 0, 0));
+        assertEquals(5, queue.getTimestamp(0));
+    }
+
+    @Test(timeout = 10000)
+    public void remove_deliversEverySampleAcrossThreads() throws Exception {
+        final SampleQueue queue = new SampleQueue(64);
+        final int count = 100000;
+        final AtomicReference<String> error = new AtomicReference<>();
+
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                long next = 0;
+                while(next < count) {
+                    int size = queue.size();
+                    if(size == 0) {
+                        // Let the writer run on single core machines
+                        Thread.yield();
+                        continue;
+                    }
+                    for(int i = 0; i < size; i++) {
+                        long timestamp = queue.getTimestamp(i);
+                        if(timestamp != next || queue.getX(i) != timestamp || queue.getY(i) != -timestamp) {
+                            error.set("Read " + timestamp + " instead of " + next);
+                            return;
+                        }
+                        next++;
+                    }
+                    queue.remove(size);
+                }
+            }
+        };
+        reader.start();
+
+        for(int i = 0; i < count; i++) {
+            while(!queue.offer(i, i, -i, 0))
+                Thread.yield();
+        }
+
+        reader.join();
+        assertNull(error.get());
+    }
+}
@@ -0,0 +1,8 @@
+package android.graphics;
+
+/**
+ * Plain Java stand-in of the Android Color, only what the shared app classes use.
+ */
+public class Color {
+    public static final int GREEN = 0xFF00FF00;
+}
@@ -0,0 +1,44 @@
+package dimitri_dessus.labymotion.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dimitri_dessus.labymotion.models.Ball;
+
+/**
+ * Integration of the ball, one physics step per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallBenchmark {
+
+    private Ball mBall;
+    private int mStep;
+
+    @Setup
+    public void setUp() {
+        Ball.RADIUS = 10.0f;
+        mBall = new Ball();
+        mBall.setWidth(1920);
+        mBall.setHeight(1080);
+        mBall.setInitialPosition(20, 20);
+    }
+
+    @Benchmark
+    public float putXAndY() {
+        // Tilt back and forth so the ball keeps bouncing on the screen edges
+        float tilt = (mStep++ & 64) == 0 ? 9.0f : -9.0f;
+        mBall.putXAndY(tilt, -tilt);
+        return mBall.getX();
+    }
+}
@@ -0,0 +1,79 @@
+package dimitri_dessus.labymotion.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dimitri_dessus.labymotion.models.BallSystem;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Extra balls rolling in a random labyrinth, one physics step per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallSystemBenchmark {
+
+    private static final float CELL = 20.0f;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int count;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    // Screens on each side of the labyrinth, balls start on the first one
+    @Param({"1", "10"})
+    public int screens;
+
+    private BlockStore mBlocks;
+    private BallSystem mBalls;
+    private ExecutorService mExecutor;
+    private int mStep;
+
+    @Setup
+    public void setUp() {
+        // Fallen balls stop costing anything, blocs are swept but never hit
+        mBlocks = new BlockStore(96 * screens, 54 * screens);
+
+        Random random = new Random(42);
+        mBalls = new BallSystem(count);
+        mBalls.setBounds(1920 * screens, 1080 * screens);
+        for(int i = 0; i < count; i++)
+            mBalls.add(5 + random.nextFloat() * 1910, 5 + random.nextFloat() * 1070, 2 + random.nextFloat() * 3);
+
+        if(parallel) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            mExecutor = Executors.newFixedThreadPool(Math.max(cores - 1, 1));
+            mBalls.setExecutor(mExecutor, Math.max(cores, 2));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(mExecutor != null)
+            mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public int step() {
+        // Tilt back and forth so balls keep bouncing on the sides and on each other
+        float tilt = (mStep++ & 64) == 0 ? 9.0f : -9.0f;
+        return mBalls.step(tilt, -tilt, mBlocks, CELL);
+    }
+}
@@ -0,0 +1,90 @@
+package dimitri_dessus.labymotion.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.models.BlockStore;
+import dimitri_dessus.labymotion.models.Collision;
+import dimitri_dessus.labymotion.models.WallContacts;
+
+/**
+ * Collision checks of one ball step against labyrinths of growing size.
+ * Cost must not depend on the number of cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+    private static final float RADIUS = 10.0f;
+    private static final int STEPS = 1024;
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int cells;
+
+    private BlockStore mBlocks;
+    private final Collision mCollision = new Collision();
+
+    // Same labyrinth with walls instead of holes
+    private BlockStore mWallBlocks;
+    private final WallContacts mWalls = new WallContacts();
+
+    // Random steps of the ball: last X, last Y, X, Y
+    private final float[] mSteps = new float[STEPS * 4];
+    private int mStep;
+
+    @Setup
+    public void setUp() {
+        int side = (int) Math.sqrt(cells);
+        mBlocks = MazeGenerator.generate(side, side, 2, 42L);
+
+        byte[] walls = mBlocks.getCells().clone();
+        for(int i = 0; i < walls.length; i++) {
+            if(walls[i] == BlockStore.HOLE)
+                walls[i] = BlockStore.WALL;
+        }
+        mWallBlocks = new BlockStore(side, side, walls);
+
+        Random random = new Random(42L);
+        float size = side * RADIUS * 2;
+        for(int i = 0; i < STEPS; i++) {
+            float x = random.nextFloat() * size;
+            float y = random.nextFloat() * size;
+            mSteps[i * 4] = x;
+            mSteps[i * 4 + 1] = y;
+            mSteps[i * 4 + 2] = x + (random.nextFloat() - 0.5f) * 60;
+            mSteps[i * 4 + 3] = y + (random.nextFloat() - 0.5f) * 60;
+        }
+    }
+
+    @Benchmark
+    public boolean sweep() {
+        int i = (mStep++ & (STEPS - 1)) * 4;
+        return mBlocks.sweep(mSteps[i], mSteps[i + 1], mSteps[i + 2], mSteps[i + 3], RADIUS, mCollision);
+    }
+
+    @Benchmark
+    public boolean resolveWalls() {
+        int i = (mStep++ & (STEPS - 1)) * 4;
+        return mWalls.resolve(mWallBlocks, RADIUS * 2, mSteps[i], mSteps[i + 1], mSteps[i + 2], mSteps[i + 3], RADIUS);
+    }
+
+    @Benchmark
+    public boolean find() {
+        int i = (mStep++ & (STEPS - 1)) * 4;
+        return mBlocks.find(mSteps[i + 2], mSteps[i + 3], RADIUS, mCollision);
+    }
+}
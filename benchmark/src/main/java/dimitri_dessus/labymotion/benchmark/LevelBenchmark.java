@@ -0,0 +1,82 @@
+package dimitri_dessus.labymotion.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import dimitri_dessus.labymotion.levels.LevelLoader;
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.models.BlockRects;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Building a level: loading it from ASCII or binary files, generating it, or
+ * merging its blocs in rectangles for drawing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBenchmark {
+
+    @Param({ "100", "1000", "10000", "100000" })
+    public int cells;
+
+    private int mSide;
+    private byte[] mAscii;
+    private byte[] mBinary;
+    private BlockStore mBlocks;
+
+    @Setup
+    public void setUp() throws IOException {
+        mSide = (int) Math.sqrt(cells);
+        BlockStore blocks = MazeGenerator.generate(mSide, mSide, 2, 42L);
+        mBlocks = blocks;
+
+        // ASCII file
+        StringBuilder ascii = new StringBuilder();
+        for(int y = 0; y < blocks.getRows(); y++) {
+            for(int x = 0; x < blocks.getColumns(); x++)
+                ascii.append(".#SE".charAt(blocks.getCell(x, y)));
+            ascii.append('\n');
+        }
+        mAscii = ascii.toString().getBytes("US-ASCII");
+
+        // Binary file
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        LevelLoader.write(blocks, binary);
+        mBinary = binary.toByteArray();
+    }
+
+    @Benchmark
+    public BlockStore loadAscii() throws IOException {
+        return LevelLoader.load(new ByteArrayInputStream(mAscii));
+    }
+
+    @Benchmark
+    public BlockStore loadBinary() throws IOException {
+        return LevelLoader.load(new ByteArrayInputStream(mBinary));
+    }
+
+    @Benchmark
+    public BlockStore generate() {
+        return MazeGenerator.generate(mSide, mSide, 2, 42L);
+    }
+
+    @Benchmark
+    public BlockRects merge() {
+        return BlockRects.merge(mBlocks, 4);
+    }
+}
@@ -0,0 +1,217 @@
+package dimitri_dessus.labymotion.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import dimitri_dessus.labymotion.levels.LevelCheck;
+import dimitri_dessus.labymotion.levels.LevelLoader;
+
+/**
+ * Check a pack of level files in parallel before shipping it, and report
+ * whether each level can be played and how hard it is.
+ *
+ * Arguments: [-o report] then level files or directories searched for level files,
+ * the report is printed when no file is given.
+ * Exits with status 1 if a level can't be read or played.
+ */
+
+public class LevelValidator {
+
+    // Levels checked by a task without splitting it
+    private static final int THRESHOLD = 64;
+
+    private LevelValidator() { }
+
+    public static void main(String[] pArgs) throws FileNotFoundException {
+        PrintStream output = System.out;
+        List<File> levels = new ArrayList<>();
+        for(int i = 0; i < pArgs.length; i++) {
+            if(pArgs[i].equals("-o") && i + 1 < pArgs.length)
+                output = new PrintStream(new File(pArgs[++i]));
+            else
+                collect(new File(pArgs[i]), levels);
+        }
+        Collections.sort(levels);
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool();
+        Report report;
+        try {
+            report = validate(pool, levels.toArray(new File[levels.size()]));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for(int i = 0; i < report.getCount(); i++)
+            output.println(report.describe(i));
+        output.println(String.format("%d level(s), %d failure(s) in %.3f s, %.0f levels/s",
+                report.getCount(), report.getFailureCount(), seconds, report.getCount() / seconds));
+        if(output != System.out)
+            output.close();
+
+        if(report.getFailureCount() > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Load and check level files.
+     *
+     * @param pPool Pool running the checks.
+     * @param pLevels Level files.
+     * @return Report of each level, in the order of the files.
+     * @see LevelCheck
+     */
+    public static Report validate(ForkJoinPool pPool, File[] pLevels) {
+        Report report = new Report(pLevels);
+        pPool.invoke(new ValidateTask(report, 0, pLevels.length));
+        return report;
+    }
+
+    /**
+     * Result of the check of each level, stored by field in arrays.
+     * Each level is written by one task only.
+     */
+    public static class Report {
+        private final File[] mLevels;
+        private final String[] mErrors;
+        private final int[] mProblems;
+        private final int[] mPathLengths;
+        private final int[] mNearHoles;
+        private final float[] mMeanWidths;
+        private final float[] mDifficulties;
+
+        Report(File[] pLevels) {
+            this.mLevels = pLevels;
+            this.mErrors = new String[pLevels.length];
+            this.mProblems = new int[pLevels.length];
+            this.mPathLengths = new int[pLevels.length];
+            this.mNearHoles = new int[pLevels.length];
+            this.mMeanWidths = new float[pLevels.length];
+            this.mDifficulties = new float[pLevels.length];
+        }
+
+        public int getCount() {
+            return mLevels.length;
+        }
+
+        /**
+         * Getter of the error reading a level
+         *
+         * @param pIndex Index of the level.
+         * @return Error message, null if the level was read.
+         */
+        public String getError(int pIndex) {
+            return mErrors[pIndex];
+        }
+
+        /**
+         * Getter of the problems of a level
+         *
+         * @param pIndex Index of the level.
+         * @return Problem flags of LevelCheck, 0 if the level can be played.
+         */
+        public int getProblems(int pIndex) {
+            return mProblems[pIndex];
+        }
+
+        public int getPathLength(int pIndex) {
+            return mPathLengths[pIndex];
+        }
+
+        public float getDifficulty(int pIndex) {
+            return mDifficulties[pIndex];
+        }
+
+        /**
+         * Getter of the number of levels that can't be read or played
+         *
+         * @return Number of failed levels.
+         */
+        public int getFailureCount() {
+            int failures = 0;
+            for(int i = 0; i < mLevels.length; i++) {
+                if(mErrors[i] != null || mProblems[i] != 0)
+                    failures++;
+            }
+            return failures;
+        }
+
+        /**
+         * Describe the check of a level.
+         *
+         * @param pIndex Index of the level.
+         * @return Problems, path, corridors and difficulty.
+         */
+        public String describe(int pIndex) {
+            if(mErrors[pIndex] != null)
+                return mLevels[pIndex] + ": " + mErrors[pIndex];
+
+            return String.format("%s: %s, path %d, width %.2f, %d near hole(s), difficulty %.2f",
+                    mLevels[pIndex], LevelCheck.describe(mProblems[pIndex]), mPathLengths[pIndex],
+                    mMeanWidths[pIndex], mNearHoles[pIndex], mDifficulties[pIndex]);
+        }
+    }
+
+    /**
+     * Task checking a range of the levels, split in halves until small enough.
+     */
+    @SuppressWarnings("serial")
+    private static class ValidateTask extends RecursiveAction {
+        private final Report mReport;
+        private final int mFrom;
+        private final int mTo;
+
+        ValidateTask(Report pReport, int pFrom, int pTo) {
+            this.mReport = pReport;
+            this.mFrom = pFrom;
+            this.mTo = pTo;
+        }
+
+        @Override
+        protected void compute() {
+            if(mTo - mFrom <= THRESHOLD) {
+                // Search arrays shared by the levels of the range
+                LevelCheck check = new LevelCheck();
+                for(int i = mFrom; i < mTo; i++) {
+                    try (InputStream input = new FileInputStream(mReport.mLevels[i])) {
+                        check.check(LevelLoader.load(input));
+                    } catch (IOException | RuntimeException e) {
+                        mReport.mErrors[i] = e.toString();
+                        continue;
+                    }
+                    mReport.mProblems[i] = check.getProblems();
+                    mReport.mPathLengths[i] = check.getPathLength();
+                    mReport.mNearHoles[i] = check.getNearHoles();
+                    mReport.mMeanWidths[i] = check.getMeanWidth();
+                    mReport.mDifficulties[i] = check.getDifficulty();
+                }
+                return;
+            }
+
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new ValidateTask(mReport, mFrom, middle), new ValidateTask(mReport, middle, mTo));
+        }
+    }
+
+    private static void collect(File pFile, List<File> pLevels) {
+        File[] children = pFile.listFiles();
+        if(children == null) {
+            pLevels.add(pFile);
+            return;
+        }
+        for(File child : children) {
+            if(!child.getName().startsWith("."))
+                collect(child, pLevels);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dimitri_dessus.labymotion.tools;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.levels.MazeSolver;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+/**
+ * Generate and validate many labyrinths in parallel.
+ * Labyrinth i uses seed firstSeed + i, so a batch gives the same labyrinths
+ * whatever the number of threads.
+ */
+
+public class MazeBatch {
+
+    // Labyrinths generated by a task without splitting it
+    private static final int THRESHOLD = 16;
+
+    private MazeBatch() { }
+
+    /**
+     * Generate a batch of labyrinths, each one checked to have a path from START to END.
+     *
+     * @param pPool Pool running the generation.
+     * @param pCount Number of labyrinths.
+     * @param pFirstSeed Seed of the first labyrinth.
+     * @param pColumns Number of cells in the X axis.
+     * @param pRows Number of cells in the Y axis.
+     * @param pCorridor Width of corridors in cells.
+     * @return Labyrinths, in seed order.
+     * @throws IllegalStateException If a labyrinth has no path from START to END.
+     * @see MazeGenerator
+     */
+    public static BlockStore[] generate(ForkJoinPool pPool, int pCount, long pFirstSeed,
+                                        int pColumns, int pRows, int pCorridor) {
+        BlockStore[] mazes = new BlockStore[pCount];
+        pPool.invoke(new GenerateTask(mazes, 0, pCount, pFirstSeed, pColumns, pRows, pCorridor));
+        return mazes;
+    }
+
+    /**
+     * Task generating a range of the batch, split in halves until small enough.
+     */
+    @SuppressWarnings("serial")
+    private static class GenerateTask extends RecursiveAction {
+        private final BlockStore[] mMazes;
+        private final int mFrom;
+        private final int mTo;
+        private final long mFirstSeed;
+        private final int mColumns;
+        private final int mRows;
+        private final int mCorridor;
+
+        GenerateTask(BlockStore[] pMazes, int pFrom, int pTo, long pFirstSeed,
+                     int pColumns, int pRows, int pCorridor) {
+            this.mMazes = pMazes;
+            this.mFrom = pFrom;
+            this.mTo = pTo;
+            this.mFirstSeed = pFirstSeed;
+            this.mColumns = pColumns;
+            this.mRows = pRows;
+            this.mCorridor = pCorridor;
+        }
+
+        @Override
+        protected void compute() {
+            if(mTo - mFrom <= THRESHOLD) {
+                for(int i = mFrom; i < mTo; i++) {
+                    long seed = mFirstSeed + i;
+                    BlockStore maze = MazeGenerator.generate(mColumns, mRows, mCorridor, seed);
+                    if(MazeSolver.pathLength(maze) < 0)
+                        throw new IllegalStateException("Labyrinth of seed " + seed + " has no path");
+                    mMazes[i] = maze;
+                }
+                return;
+            }
+
+            int middle = (mFrom + mTo) >>> 1;
+            invokeAll(new GenerateTask(mMazes, mFrom, middle, mFirstSeed, mColumns, mRows, mCorridor),
+                    new GenerateTask(mMazes, middle, mTo, mFirstSeed, mColumns, mRows, mCorridor));
+        }
+    }
+}
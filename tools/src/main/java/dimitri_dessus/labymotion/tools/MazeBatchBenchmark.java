@@ -0,0 +1,41 @@
+package dimitri_dessus.labymotion.tools;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measure labyrinths generated and validated per second, for 1 thread up to
+ * the number of cores.
+ *
+ * Arguments: [count] [columns] [rows] [corridor], defaults to 10000 41 31 2.
+ */
+
+public class MazeBatchBenchmark {
+
+    private MazeBatchBenchmark() { }
+
+    public static void main(String[] pArgs) {
+        int count = pArgs.length > 0 ? Integer.parseInt(pArgs[0]) : 10000;
+        int columns = pArgs.length > 1 ? Integer.parseInt(pArgs[1]) : 41;
+        int rows = pArgs.length > 2 ? Integer.parseInt(pArgs[2]) : 31;
+        int corridor = pArgs.length > 3 ? Integer.parseInt(pArgs[3]) : 2;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Labyrinths " + columns + "x" + rows + ", corridor " + corridor + ", batch of " + count);
+
+        for(int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : threads + 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                // Warm up
+                MazeBatch.generate(pool, count, 0, columns, rows, corridor);
+
+                long start = System.nanoTime();
+                MazeBatch.generate(pool, count, count, columns, rows, corridor);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.println(String.format("%3d thread(s): %12.0f labyrinths/s", threads, count / seconds));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
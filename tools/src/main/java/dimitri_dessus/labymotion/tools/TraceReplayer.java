@@ -0,0 +1,98 @@
+package dimitri_dessus.labymotion.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dimitri_dessus.labymotion.engines.GameSimulation;
+import dimitri_dessus.labymotion.replay.TraceReplay;
+
+/**
+ * Replay recorded games and print their outcome, one line per trace.
+ *
+ * Arguments: trace files or directories searched for ".lbyr" files.
+ * Exits with status 1 if a trace can't be read.
+ */
+
+public class TraceReplayer {
+
+    private TraceReplayer() { }
+
+    public static void main(String[] pArgs) {
+        List<File> traces = new ArrayList<>();
+        for(String arg : pArgs)
+            collect(new File(arg), traces);
+        Collections.sort(traces);
+
+        long samples = 0;
+        int failures = 0;
+        long start = System.nanoTime();
+
+        for(File trace : traces) {
+            TraceReplay replay = new TraceReplay();
+            try (InputStream input = new FileInputStream(trace)) {
+                replay.run(input);
+            } catch (IOException | RuntimeException e) {
+                System.out.println(trace + ": " + e);
+                failures++;
+                continue;
+            }
+            samples += replay.getSampleCount();
+            System.out.println(describe(trace, replay));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d trace(s), %d sample(s) in %.3f s, %.0f samples/s",
+                traces.size(), samples, seconds, samples / seconds));
+
+        if(failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Describe the outcome of a replayed trace.
+     *
+     * @param pTrace Trace file.
+     * @param pReplay Replay of the trace.
+     * @return Samples, game events and final state.
+     */
+    static String describe(File pTrace, TraceReplay pReplay) {
+        int defeats = 0;
+        int victories = 0;
+        int walking = 0;
+        for(int i = 0; i < pReplay.getEventCount(); i++) {
+            switch(pReplay.getEventType(i)) {
+                case GameSimulation.DEFEAT:
+                    defeats++;
+                    break;
+                case GameSimulation.VICTORY:
+                    victories++;
+                    break;
+                case GameSimulation.WALKING:
+                    walking++;
+                    break;
+            }
+        }
+
+        return String.format("%s: %d samples, %d defeat(s), %d victory(ies), %d walking, ball at (%.3f, %.3f), colors %d/%d",
+                pTrace, pReplay.getSampleCount(), defeats, victories, walking,
+                pReplay.getBall().getX(), pReplay.getBall().getY(),
+                pReplay.getColors().getLuminosityLevel(), pReplay.getColors().getMagneticLevel());
+    }
+
+    private static void collect(File pFile, List<File> pTraces) {
+        File[] children = pFile.listFiles();
+        if(children == null) {
+            pTraces.add(pFile);
+            return;
+        }
+        for(File child : children) {
+            if(child.isDirectory() || child.getName().endsWith(".lbyr"))
+                collect(child, pTraces);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dimitri_dessus.labymotion.engines;
+
+import org.junit.Test;
+
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.models.Ball;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the bot playing generated labyrinths.
+ */
+public class AutoPilotTest {
+
+    @Test
+    public void autoPilot_winsGeneratedLabyrinths() throws Exception {
+        Ball.RADIUS = 10.0f;
+        for(long seed = 0; seed < 20; seed++) {
+            BlockStore blocks = MazeGenerator.generate(41, 31, 3, seed);
+            assertEquals("Seed " + seed, GameSimulation.VICTORY, play(blocks));
+        }
+    }
+
+    private static int play(BlockStore pBlocks) {
+        Ball ball = new Ball();
+        ball.setWidth(41 * 20);
+        ball.setHeight(31 * 20);
+        GameSimulation game = new GameSimulation();
+        game.setBall(ball);
+        game.setBlocks(pBlocks);
+        game.setAutoPilot(true);
+        game.resume();
+
+        // Ten minutes of samples at the physics rate, sensor values are ignored
+        long timestamp = 0;
+        for(int i = 0; i < 30000; i++) {
+            timestamp += GameSimulation.DEFAULT_TIME_STEP;
+            int event = game.addSample(timestamp, 0, 0, 0);
+            assertNotEquals(GameSimulation.WALKING, event);
+            if(event != GameSimulation.NONE)
+                return event;
+        }
+        return GameSimulation.NONE;
+    }
+}
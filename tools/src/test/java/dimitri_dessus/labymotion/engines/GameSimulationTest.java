@@ -0,0 +1,187 @@
+package dimitri_dessus.labymotion.engines;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.models.Ball;
+import dimitri_dessus.labymotion.models.BallSystem;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the saved game state.
+ */
+public class GameSimulationTest {
+
+    private long mTimestamp = 0;
+
+    @Test
+    public void restoreState_goesOnLikeTheSavedGame() throws Exception {
+        Ball.RADIUS = 10.0f;
+        BlockStore blocks = MazeGenerator.generate(41, 31, 3, 5L);
+        GameSimulation game = create(blocks);
+        Random random = new Random(3);
+
+        // Walk then tilt the device, so the ball moves and the walking window is full
+        long timestamp = 0;
+        for(int i = 0; i < 200; i++) {
+            timestamp += 7000000L + random.nextInt(10000000);
+            game.addSample(timestamp, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, 9.8f + random.nextFloat());
+        }
+        byte[] state = game.saveState();
+        assertTrue(state.length < 512);
+        assertEquals(-1, GameSimulation.getSavedLevel(state));
+
+        GameSimulation restored = create(blocks);
+        assertTrue(restored.restoreState(state));
+        assertArrayEquals(state, restored.saveState());
+
+        // Same samples, same game
+        for(int i = 0; i < 500; i++) {
+            timestamp += 7000000L + random.nextInt(10000000);
+            float x = random.nextFloat() * 2 - 1;
+            float y = random.nextFloat() * 2 - 1;
+            float z = 9.8f + random.nextFloat() * 3;
+            assertEquals(game.addSample(timestamp, x, y, z), restored.addSample(timestamp, x, y, z));
+            assertEquals(game.getBall().getX(), restored.getBall().getX(), 0);
+            assertEquals(game.getBall().getY(), restored.getBall().getY(), 0);
+        }
+    }
+
+    @Test
+    public void restoreState_rejectsOtherLabyrinth() throws Exception {
+        Ball.RADIUS = 10.0f;
+        byte[] state = create(MazeGenerator.generate(41, 31, 3, 5L)).saveState();
+
+        assertFalse(create(MazeGenerator.generate(21, 31, 3, 5L)).restoreState(state));
+
+        state[4]++;
+        assertEquals(-1, GameSimulation.getSavedLevel(state));
+        assertFalse(create(MazeGenerator.generate(41, 31, 3, 5L)).restoreState(state));
+    }
+
+    @Test
+    public void restoreState_scalesWithRadius() throws Exception {
+        Ball.RADIUS = 10.0f;
+        BlockStore blocks = MazeGenerator.generate(41, 31, 3, 5L);
+        GameSimulation game = create(blocks);
+        float x = game.getBall().getX();
+        float y = game.getBall().getY();
+        byte[] state = game.saveState();
+
+        Ball.RADIUS = 15.0f;
+        GameSimulation restored = create(blocks);
+        assertTrue(restored.restoreState(state));
+        assertEquals(x * 1.5f, restored.getBall().getX(), 0.001f);
+        assertEquals(y * 1.5f, restored.getBall().getY(), 0.001f);
+        Ball.RADIUS = 10.0f;
+    }
+
+    @Test
+    public void resume_keepsRestoredRun() throws Exception {
+        Ball.RADIUS = 10.0f;
+        BlockStore blocks = MazeGenerator.generate(41, 31, 3, 5L);
+        GameSimulation game = create(blocks);
+
+        // Shake the device until the player walks
+        long timestamp = 0;
+        int outcome = GameSimulation.NONE;
+        for(int i = 0; outcome != GameSimulation.WALKING; i++) {
+            timestamp += 20000000L;
+            outcome = game.addSample(timestamp, 0, 0, i % 2 == 0 ? 17.8f : 1.8f);
+        }
+        byte[] state = game.saveState();
+
+        // Activity restores the state, then resumes the game
+        GameSimulation restored = create(blocks);
+        assertTrue(restored.restoreState(state));
+        restored.resume();
+        assertArrayEquals(state, restored.saveState());
+
+        // Walking detection goes on
+        timestamp += 20000000L;
+        assertEquals(GameSimulation.WALKING, restored.addSample(timestamp, 0, 0, 17.8f));
+
+        // Only once, next pause starts a new run
+        restored.resume();
+        timestamp += 20000000L;
+        assertEquals(GameSimulation.NONE, restored.addSample(timestamp, 0, 0, 1.8f));
+    }
+
+    @Test
+    public void addSample_doesNotAllocate() throws Exception {
+        Ball.RADIUS = 10.0f;
+
+        // Rooms with walls on every side, the ball rolls from room to room to a hole or END
+        BlockStore blocks = new BlockStore(20, 14);
+        for(int y = 0; y < 14; y++) {
+            for(int x = 0; x < 20; x++) {
+                if(x % 5 == 0 && y % 7 != 3 || y % 7 == 0 && x % 5 != 2)
+                    blocks.setCell(x, y, BlockStore.WALL);
+            }
+        }
+        blocks.setCell(2, 3, BlockStore.START);
+        blocks.setCell(4, 6, BlockStore.HOLE);
+        blocks.setCell(12, 10, BlockStore.HOLE);
+        blocks.setCell(17, 3, BlockStore.END);
+        GameSimulation game = create(blocks);
+
+        BallSystem balls = new BallSystem(64);
+        for(int i = 0; i < 64; i++)
+            balls.add(30 + (i % 8) * 40, 30 + (i / 8) * 30, 4);
+        game.setBalls(balls);
+
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so that the measure only covers steady state
+        int ends = play(game, 100000);
+
+        // Keep the best round, JIT activity may allocate a few bytes in the others
+        long allocated = Long.MAX_VALUE;
+        for(int round = 0; round < 5; round++) {
+            long before = bean.getThreadAllocatedBytes(threadId);
+            ends += play(game, 10000);
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertTrue(ends > 0);
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Play samples the way the physics thread does, starting again when the game ends.
+     *
+     * @return Number of games ended.
+     */
+    private int play(GameSimulation pGame, int pSamples) {
+        int ends = 0;
+        for(int i = 0; i < pSamples; i++) {
+            mTimestamp += 20000000L;
+
+            // Tilt back and forth so the ball keeps hitting walls
+            float tiltX = (i / 50) % 2 == 0 ? 9.0f : -9.0f;
+            float tiltY = (i / 70) % 3 == 0 ? 9.0f : -5.0f;
+            int outcome = pGame.addSample(mTimestamp, tiltX, tiltY, 9.8f);
+            if(outcome == GameSimulation.DEFEAT || outcome == GameSimulation.VICTORY) {
+                pGame.reset();
+                pGame.resume();
+                ends++;
+            }
+        }
+        return ends;
+    }
+
+    private static GameSimulation create(BlockStore pBlocks) {
+        GameSimulation game = new GameSimulation();
+        game.setBall(new Ball());
+        game.setBlocks(pBlocks);
+        game.resume();
+        return game;
+    }
+}
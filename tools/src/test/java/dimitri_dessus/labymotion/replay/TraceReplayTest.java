@@ -0,0 +1,141 @@
+package dimitri_dessus.labymotion.replay;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import dimitri_dessus.labymotion.engines.GameSimulation;
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.levels.PreparedLevel;
+import dimitri_dessus.labymotion.models.Ball;
+import dimitri_dessus.labymotion.models.BlockStore;
+import dimitri_dessus.labymotion.sensors.ColorLevels;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the trace recording and replay.
+ */
+public class TraceReplayTest {
+
+    @Test
+    public void run_reproducesRecordedGame() throws Exception {
+        Ball.RADIUS = 10.0f;
+        BlockStore blocks = new BlockStore(20, 14);
+        for(int x = 0; x < 20; x++)
+            blocks.setCell(x, 7, BlockStore.HOLE);
+        blocks.setCell(2, 2, BlockStore.START);
+        blocks.setCell(17, 2, BlockStore.END);
+
+        // Play a game with the recorder attached, the way the activity does
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        TraceRecorder recorder = new TraceRecorder(trace);
+        Ball ball = new Ball();
+        GameSimulation game = new GameSimulation();
+        ColorLevels colors = new ColorLevels();
+        game.setBall(ball);
+        game.setRecorder(recorder);
+        colors.setRecorder(recorder);
+        game.setBlocks(blocks);
+        ball.setWidth(400);
+        ball.setHeight(280);
+        game.resume();
+
+        List<Integer> events = new ArrayList<>();
+        Random random = new Random(42);
+        long timestamp = 1000000000L;
+        for(int i = 0; i < 20000; i++) {
+            // Irregular sensor rate, sometimes a gap longer than the catch up limit
+            timestamp += 15000000L + random.nextInt(10000000) + (i % 997 == 0 ? 500000000L : 0);
+
+            // Tilt changes direction every second, shaking every 3000 samples
+            float x = (i / 50) % 2 == 0 ? 3.0f : -4.0f;
+            float y = (i / 70) % 3 == 0 ? 5.0f : -2.0f;
+            float z = (i / 200) % 15 == 0 ? 9.8f + (i % 2 == 0 ? 8.0f : -8.0f) : 9.8f;
+
+            int event = game.addSample(timestamp, x, y, z);
+            if(event != GameSimulation.NONE)
+                events.add(event);
+            if(event == GameSimulation.DEFEAT || event == GameSimulation.VICTORY) {
+                game.reset();
+                game.resume();
+            }
+
+            if(i % 10 == 0)
+                colors.addLuminosity(timestamp + 1000, random.nextFloat() * 400.0f);
+            if(i % 7 == 0)
+                colors.addMagnetic(timestamp - 1000, 50.0f + i % 300, 20.0f, -30.0f);
+
+            // Pause now and then, the filters start again
+            if(i % 1500 == 1499)
+                colors.reset();
+        }
+        recorder.close();
+
+        TraceReplay replay = new TraceReplay();
+        replay.run(new ByteArrayInputStream(trace.toByteArray()));
+
+        assertTrue(events.contains(GameSimulation.DEFEAT));
+        assertTrue(events.contains(GameSimulation.WALKING));
+        assertEquals(events.size(), replay.getEventCount());
+        for(int i = 0; i < events.size(); i++)
+            assertEquals((int) events.get(i), replay.getEventType(i));
+        assertEquals(ball.getX(), replay.getBall().getX(), 0);
+        assertEquals(ball.getY(), replay.getBall().getY(), 0);
+        assertEquals(colors.getLuminosityLevel(), replay.getColors().getLuminosityLevel());
+        assertEquals(colors.getMagneticLevel(), replay.getColors().getMagneticLevel());
+        assertEquals(20000 + 2000 + 2858, replay.getSampleCount());
+    }
+
+    @Test
+    public void run_reproducesRestoredGame() throws Exception {
+        Ball.RADIUS = 10.0f;
+        PreparedLevel level = PreparedLevel.prepare(3, MazeGenerator.generate(41, 31, 3, 5L));
+
+        // Play a while before the activity is created again
+        GameSimulation before = new GameSimulation();
+        before.setBall(new Ball());
+        before.setLevel(level);
+        before.setAutoPilot(true);
+        before.resume();
+        long timestamp = 1000000000L;
+        for(int i = 0; i < 300; i++) {
+            timestamp += 20000000L;
+            before.addSample(timestamp, 0, 0, 9.8f);
+        }
+        byte[] state = before.saveState();
+
+        // New activity records a new trace, then restores the game
+        ByteArrayOutputStream trace = new ByteArrayOutputStream();
+        TraceRecorder recorder = new TraceRecorder(trace);
+        Ball ball = new Ball();
+        GameSimulation game = new GameSimulation();
+        game.setBall(ball);
+        game.setRecorder(recorder);
+        game.setLevel(level);
+        game.setAutoPilot(true);
+        assertTrue(game.restoreState(state));
+        game.resume();
+        for(int i = 0; i < 300; i++) {
+            timestamp += 20000000L;
+            game.addSample(timestamp, 0, 0, 9.8f);
+        }
+        recorder.close();
+
+        TraceReplay replay = new TraceReplay();
+        replay.run(new ByteArrayInputStream(trace.toByteArray()));
+
+        assertEquals(ball.getX(), replay.getBall().getX(), 0);
+        assertEquals(ball.getY(), replay.getBall().getY(), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void run_rejectsOtherFiles() throws Exception {
+        new TraceReplay().run(new ByteArrayInputStream("LBYM\1".getBytes("US-ASCII")));
+    }
+}
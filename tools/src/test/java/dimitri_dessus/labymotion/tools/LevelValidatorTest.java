@@ -0,0 +1,78 @@
+package dimitri_dessus.labymotion.tools;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import dimitri_dessus.labymotion.levels.LevelCheck;
+import dimitri_dessus.labymotion.levels.LevelLoader;
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.levels.MazeSolver;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the parallel check of level files.
+ */
+public class LevelValidatorTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void validate_reportsEveryLevelInOrder() throws Exception {
+        File[] levels = new File[300];
+        for(int i = 0; i < levels.length; i++) {
+            levels[i] = mFolder.newFile(String.format("%03d.lbym", i));
+            BlockStore maze = MazeGenerator.generate(21, 15, 2, i);
+            // Every tenth level loses its END
+            if(i % 10 == 0)
+                maze.setCell(maze.indexOf(BlockStore.END) % 21, maze.indexOf(BlockStore.END) / 21, BlockStore.EMPTY);
+            try (OutputStream output = new FileOutputStream(levels[i])) {
+                LevelLoader.write(maze, output);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        LevelValidator.Report report;
+        try {
+            report = LevelValidator.validate(pool, levels);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(300, report.getCount());
+        assertEquals(30, report.getFailureCount());
+        for(int i = 0; i < levels.length; i++) {
+            assertNull(report.getError(i));
+            if(i % 10 == 0) {
+                assertEquals(LevelCheck.NO_END, report.getProblems(i));
+            } else {
+                assertEquals(0, report.getProblems(i));
+                assertEquals(MazeSolver.pathLength(MazeGenerator.generate(21, 15, 2, i)), report.getPathLength(i));
+                assertTrue(report.getDifficulty(i) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void validate_reportsUnreadableLevel() throws Exception {
+        File[] levels = { new File(mFolder.getRoot(), "missing.txt") };
+
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            LevelValidator.Report report = LevelValidator.validate(pool, levels);
+
+            assertNotNull(report.getError(0));
+            assertEquals(1, report.getFailureCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
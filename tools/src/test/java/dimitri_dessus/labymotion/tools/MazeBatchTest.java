@@ -0,0 +1,32 @@
+package dimitri_dessus.labymotion.tools;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import dimitri_dessus.labymotion.levels.MazeGenerator;
+import dimitri_dessus.labymotion.models.BlockStore;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test of the parallel labyrinth generation.
+ */
+public class MazeBatchTest {
+
+    @Test
+    public void generate_matchesSequentialGeneration() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BlockStore[] mazes = MazeBatch.generate(pool, 100, 1000L, 20, 14, 2);
+
+            assertEquals(100, mazes.length);
+            for(int i = 0; i < mazes.length; i++) {
+                BlockStore expected = MazeGenerator.generate(20, 14, 2, 1000L + i);
+                assertArrayEquals(expected.getCells(), mazes[i].getCells());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}